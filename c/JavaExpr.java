@@ -388,17 +388,10 @@ class JavaExpr extends Code {
             ctx.visitLabel(end);
         } else if (descr == "B" || descr == "S" ||
                    descr == "I" || descr == "J") {
-            ctx.typeInsn(NEW, "yeti/lang/IntNum");
-            if (descr == "J") {
-                ctx.insn(DUP_X2);
-                ctx.insn(DUP_X2);
-                ctx.insn(POP);
-            } else {
-                ctx.insn(DUP_X1);
-                ctx.insn(SWAP);
-            }
-            ctx.visitInit("yeti/lang/IntNum",
-                          descr == "J" ? "(J)V" : "(I)V");
+            if (descr != "J")
+                ctx.insn(I2L);
+            ctx.methodInsn(INVOKESTATIC, "yeti/lang/IntNum", "valueOf",
+                           "(J)Lyeti/lang/IntNum;");
             ctx.forceType("yeti/lang/Num");
         } else if (descr == "D" || descr == "F") {
             ctx.typeInsn(NEW, "yeti/lang/FloatNum");
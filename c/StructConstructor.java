@@ -37,6 +37,7 @@ import java.util.Comparator;
 import java.util.Iterator;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 
 final class StructField implements Opcodes {
     int property; // 0 - not property, 1 - property, -1 - constant property
@@ -251,14 +252,17 @@ final class StructConstructor extends CapturingClosure implements Comparator {
 
     void gen(Ctx ctx) {
         boolean generated = false;
-        // default: null - GenericStruct
-        if (mustGen || fieldCount > 6 && fieldCount <= 15) {
+        // wider structures get a shape class shared by the package,
+        // which is initialised like Struct3 and Struct6
+        if (mustGen) {
             impl = genStruct(ctx);
             generated = true;
         } else if (fieldCount <= 3) {
             impl = "yeti/lang/Struct3";
         } else if (fieldCount <= 6) {
             impl = "yeti/lang/Struct6";
+        } else {
+            impl = genStruct(ctx);
         }
         for (int i = 0; i < fieldCount; ++i)
             if (fields[i].binder != null)
@@ -272,7 +276,7 @@ final class StructConstructor extends CapturingClosure implements Comparator {
         } else if (generated) {
             ctx.visitInit(implClass, "()V");
         } else {
-            ctx.constants.structInitArg(ctx, fields, fieldCount, false);
+            ctx.constants.structInitArg(ctx, fields, fieldCount);
             ctx.visitInit(implClass, "([Ljava/lang/String;[Z)V");
         }
         if (arrayVar != -1)
@@ -333,30 +337,52 @@ final class StructConstructor extends CapturingClosure implements Comparator {
                     !field.inherited && field.value.prepareConst(ctx))
                     field.property = -1;
             }
+            cn = ctx.compilation.createClassName(ctx, ctx.className, "");
         } else {
-            StringBuffer buf = new StringBuffer();
-            for (i = 0; i < fields.length; ++i) {
+            /*
+             * The shape class depends only on the field names and
+             * mutability, so it is shared by all modules of the package
+             * in the compilation. It is named by the shape's hash under
+             * the module that first used it, as other compilations may
+             * have generated a different class with the same hash into
+             * the package (and createClassName numbers hash collisions).
+             */
+            String pkg = ctx.className.substring(0,
+                                ctx.className.lastIndexOf('/') + 1);
+            StringBuffer buf = new StringBuffer(pkg);
+            long hash = 0xcbf29ce484222325L; // FNV-1a
+            for (i = 0; i < fieldCount; ++i) {
                 buf.append(fields[i].mutable ? ';' : ',')
                    .append(fields[i].name);
             }
+            for (i = pkg.length(); i < buf.length(); ++i)
+                hash = (hash ^ buf.charAt(i)) * 0x100000001b3L;
             structKey = buf.toString();
-            cn = (String) ctx.constants.structClasses.get(structKey);
+            cn = (String) ctx.compilation.structClasses.get(structKey);
             if (cn != null)
                 return cn;
+            cn = ctx.compilation.createClassName(null,
+                    ctx.constants.ctx.className,
+                    "Struct".concat(Long.toHexString(hash)));
+            ctx.compilation.structClasses.put(structKey, cn);
         }
 
-        cn = ctx.compilation.createClassName(ctx, ctx.className, "");
-        if (structKey != null) {
-            ctx.constants.structClasses.put(structKey, cn);
-        }
         Ctx st = ctx.newClass(ACC_SUPER | ACC_FINAL, cn,
                               "yeti/lang/AStruct", null);
         st.fieldCounter = fieldCount;
         mergeCaptures(st);
-        Ctx m = st.newMethod(ACC_PUBLIC, "<init>",
+        Ctx m;
+        if (structKey != null) {
+            m = st.newMethod(ACC_PUBLIC, "<init>",
+                             "([Ljava/lang/String;[Z)V");
+            m.load(0).load(1).load(2);
+        } else {
+            m = st.newMethod(ACC_PUBLIC, "<init>",
                     withParent == null ? "()V" : "(Lyeti/lang/Struct;)V");
-        m.load(0).constants
-                 .structInitArg(m, fields, fieldCount, withParent != null);
+            // vars include inherited var fields, as AStruct caches
+            // hashCode only for structures without those
+            m.load(0).constants.structInitArg(m, fields, fieldCount);
+        }
         m.visitInit("yeti/lang/AStruct", "([Ljava/lang/String;[Z)V");
         if (withParent != null) {
             // generates code for joining super fields
@@ -406,9 +432,10 @@ final class StructConstructor extends CapturingClosure implements Comparator {
                     m.fieldInsn(PUTFIELD, cn, "i" + i, "I");
                     m.fieldInsn(PUTFIELD, cn, fields[i].javaName,
                                 "Ljava/lang/Object;");
+                    if (jumps.length > 1)
+                        m.jumpInsn(GOTO, next);
                     if (++j >= jumps.length)
                         break;
-                    m.jumpInsn(GOTO, next);
                 }
             if (jumps.length > 1) {
                 m.visitLabel(dflt);
@@ -444,10 +471,13 @@ final class StructConstructor extends CapturingClosure implements Comparator {
                          "(Ljava/lang/String;)Ljava/lang/Object;");
         m.load(0);
         Label withMutable = null;
+        jumps = new Label[fieldCount];
+        for (i = 0; i < fieldCount; ++i)
+            jumps[i] = new Label();
+        next = new Label();
+        nameSwitch(m, jumps, next);
         for (i = 0; i < fieldCount; ++i) {
-            next = new Label();
-            m.load(1).ldcInsn(fields[i].name);
-            m.jumpInsn(IF_ACMPNE, next);
+            m.visitLabel(jumps[i]);
             if (fields[i].property != 0) {
                 m.intConst(i);
                 m.methodInsn(INVOKEVIRTUAL, cn, "get", "(I)Ljava/lang/Object;");
@@ -464,8 +494,8 @@ final class StructConstructor extends CapturingClosure implements Comparator {
                 m.insn(POP);
             }
             m.insn(ARETURN);
-            m.visitLabel(next);
         }
+        m.visitLabel(next);
         m.typeInsn(NEW, "java/lang/NoSuchFieldException");
         m.insn(DUP);
         m.load(1).visitInit("java/lang/NoSuchFieldException",
@@ -587,13 +617,17 @@ final class StructConstructor extends CapturingClosure implements Comparator {
                          "(Ljava/lang/String;Ljava/lang/Object;)V");
         m.localVarCount = 3;
         m.load(0);
+        jumps = new Label[fieldCount];
+        for (i = 0; i < fieldCount; ++i)
+            if (fields[i].mutable)
+                jumps[i] = new Label();
+        next = new Label();
+        nameSwitch(m, jumps, next);
         for (i = 0; i < fieldCount; ++i) {
             field = fields[i];
             if (!field.mutable)
                 continue;
-            next = new Label();
-            m.load(1).ldcInsn(field.name);
-            m.jumpInsn(IF_ACMPNE, next);
+            m.visitLabel(jumps[i]);
             if (field.property != 0) {
                 LoadVar var = new LoadVar();
                 var.var = 2;
@@ -610,14 +644,71 @@ final class StructConstructor extends CapturingClosure implements Comparator {
                                     "Ljava/lang/Object;");
             }
             m.insn(RETURN);
-            m.visitLabel(next);
         }
+        m.visitLabel(next);
         m.insn(POP);
         m.insn(RETURN);
         m.closeMethod();
         return cn;
     }
 
+    /*
+     * Jumps to labels[i], when the field name string in local 1 is the
+     * name of fields[i], and otherwise to dflt. Null labels are skipped.
+     * Wide structures switch on the hash code of the name (cached by
+     * String) instead of comparing it with each name in turn.
+     */
+    private void nameSwitch(Ctx m, Label[] labels, Label dflt) {
+        int i, n = 0;
+        for (i = 0; i < fieldCount; ++i)
+            if (labels[i] != null)
+                ++n;
+        if (n <= 8) {
+            for (i = 0; i < fieldCount; ++i)
+                if (labels[i] != null) {
+                    m.load(1).ldcInsn(fields[i].name);
+                    m.jumpInsn(IF_ACMPEQ, labels[i]);
+                }
+            m.jumpInsn(GOTO, dflt);
+            return;
+        }
+        long[] order = new long[n];
+        for (i = n = 0; i < fieldCount; ++i)
+            if (labels[i] != null)
+                order[n++] = (long) fields[i].name.hashCode() << 32 | i;
+        Arrays.sort(order);
+        int[] keys = new int[n];
+        Label[] buckets = new Label[n];
+        int k = 0;
+        for (i = 0; i < n; ++i)
+            if (k == 0 || keys[k - 1] != (int) (order[i] >> 32)) {
+                keys[k] = (int) (order[i] >> 32);
+                buckets[k++] = new Label();
+            }
+        if (k < n) {
+            int[] tk = new int[k];
+            Label[] tb = new Label[k];
+            System.arraycopy(keys, 0, tk, 0, k);
+            System.arraycopy(buckets, 0, tb, 0, k);
+            keys = tk;
+            buckets = tb;
+        }
+        m.load(1).methodInsn(INVOKEVIRTUAL, "java/lang/String",
+                             "hashCode", "()I");
+        m.switchInsn(0, 0, dflt, keys, buckets);
+        for (i = k = 0; i < n; ++i) {
+            int hash = (int) (order[i] >> 32), f = (int) order[i];
+            if (i == 0 || hash != (int) (order[i - 1] >> 32)) {
+                if (i != 0)
+                    m.jumpInsn(GOTO, dflt);
+                m.visitLabel(buckets[k++]);
+            }
+            m.load(1).ldcInsn(fields[f].name);
+            m.jumpInsn(IF_ACMPEQ, labels[f]);
+        }
+        m.jumpInsn(GOTO, dflt);
+    }
+
     void genWith(Ctx ctx, Code src, Map srcFields) {
         srcFields = new HashMap(srcFields);
         for (int i = 0; i < fieldCount; ++i)
@@ -630,7 +721,8 @@ final class StructConstructor extends CapturingClosure implements Comparator {
         withParent = src;
         StructField[] fields = new StructField[fieldCount + srcFields.size()];
         withFields = new String[srcFields.size() + 1];
-        Iterator j = srcFields.entrySet().iterator();
+        // sorted like the fields of the extended structure
+        Iterator j = new TreeMap(srcFields).entrySet().iterator();
         for (int i = 1; i < withFields.length; ++i) {
             Map.Entry e = (Map.Entry) j.next();
             StructField sf = new StructField();
@@ -670,16 +762,28 @@ final class WithStruct extends Code {
 
         ctx.typeInsn(NEW, "yeti/lang/WithStruct");
         ctx.insn(DUP);
+        // the site caches field layouts of the created structures
+        final boolean allowNew = srcFields != null;
+        ctx.constant(this, new Code() {
+            { type = new YType("Lyeti/lang/WithStruct$Site;"); }
+
+            void gen(Ctx init) {
+                init.typeInsn(NEW, "yeti/lang/WithStruct$Site");
+                init.insn(DUP);
+                String[] a = new String[names.length + 1];
+                System.arraycopy(names, 0, a, 1, names.length);
+                init.constants.stringArray(init, a);
+                init.intConst(allowNew ? 1 : 0);
+                init.visitInit("yeti/lang/WithStruct$Site",
+                               "([Ljava/lang/String;Z)V");
+            }
+        });
         src.gen(ctx);
         ctx.typeInsn(CHECKCAST, "yeti/lang/Struct");
         override.gen(ctx);
         ctx.typeInsn(CHECKCAST, "yeti/lang/Struct");
-        String[] a = new String[names.length + 1];
-        System.arraycopy(names, 0, a, 1, names.length);
-        ctx.constants.stringArray(ctx, a);
-        ctx.intConst(srcFields != null ? 1 : 0);
-        ctx.visitInit("yeti/lang/WithStruct",
-               "(Lyeti/lang/Struct;Lyeti/lang/Struct;[Ljava/lang/String;Z)V");
+        ctx.visitInit("yeti/lang/WithStruct", "(Lyeti/lang/WithStruct$Site;"
+                      + "Lyeti/lang/Struct;Lyeti/lang/Struct;)V");
         ctx.forceType("yeti/lang/Struct");
     }
 }
@@ -493,9 +493,38 @@ public final class YetiAnalyzer extends YetiType {
             }
             throw new CompileException(where, fun.type, argCode.type, s, ex);
         }
+        // list given directly from one lazy stage to another, like
+        // map f (filter p l), can be fused into the same pipeline
+        Code inner;
+        if (fun instanceof Apply && isListStage(((Apply) fun).fun) &&
+                argCode instanceof Apply &&
+                (inner = ((Apply) argCode).fun) instanceof Apply &&
+                isListStage(((Apply) inner).fun)) {
+            final Code list = argCode;
+            argCode = new Code() {
+                { type = list.type; }
+
+                void gen(Ctx ctx) {
+                    list.gen(ctx);
+                    ctx.methodInsn(INVOKESTATIC, "yeti/lang/Pipeline", "open",
+                                   "(Ljava/lang/Object;)Ljava/lang/Object;");
+                }
+            };
+        }
         return fun.apply(argCode, applyFun[1], where.line);
     }
 
+    // std function building lazy list stage (see yeti.lang.Pipeline)
+    private static boolean isListStage(Code fun) {
+        if (!(fun instanceof StaticRef))
+            return false;
+        String name = ((StaticRef) fun).className;
+        return name.startsWith("yeti/lang/std$") &&
+            ((name = name.substring(14)).equals("map") ||
+             name.equals("filter") || name.equals("take") ||
+             name.equals("takeWhile"));
+    }
+
     static Code rsection(XNode section, Scope scope, int depth) {
         String sym = section.expr[0].sym();
         if (sym == FIELD_OP) {
@@ -352,7 +352,19 @@ final class For extends Core2 {
     void genApply2(Ctx ctx, Code list, Code fun, int line) {
         Function f;
         LoadVar arg = new LoadVar();
-        if (!list.flagop(LIST_RANGE) && fun instanceof Function &&
+        LongCounter counter;
+        Range range = list.flagop(LIST_RANGE)
+                        ? ((ListConstructor) list).singleRange() : null;
+        if (range != null && range.from.flagop(LONG_NUM) &&
+                range.to.flagop(LONG_NUM) && fun instanceof Function &&
+                (f = (Function) fun).uncapture(counter = new LongCounter(
+                    range.from.flagop(SMALL_NUM) &&
+                    range.to.flagop(SMALL_NUM)))) {
+            genLongLoop(ctx, range, f, counter, line);
+        } else if (range != null && fun instanceof Function &&
+                (f = (Function) fun).uncapture(arg)) {
+            genRangeLoop(ctx, range, f, arg, line);
+        } else if (!list.flagop(LIST_RANGE) && fun instanceof Function &&
                     (f = (Function) fun).uncapture(arg)) {
             Label retry = new Label(), end = new Label();
             list.gen(ctx);
@@ -403,6 +415,126 @@ final class For extends Core2 {
             ctx.insn(ACONST_NULL);
         }
     }
+
+    /*
+     * Both range bounds are known to be long integers here, so the counter
+     * never leaves the long range and can be given to the body unboxed.
+     * The counter is compared against end after the body (instead of
+     * before it), so that b = Long.MAX_VALUE can't overflow it.
+     */
+    private void genLongLoop(Ctx ctx, Range range, Function f,
+                             LongCounter counter, int line) {
+        Label retry = new Label(), end = new Label();
+        int last = ctx.localVarCount;
+        counter.var = last + 2;
+        ctx.localVarCount += 4;
+        range.from.genLong(ctx);
+        ctx.varInsn(LSTORE, counter.var);
+        range.to.genLong(ctx);
+        ctx.varInsn(LSTORE, last);
+        ctx.varInsn(LLOAD, counter.var);
+        ctx.varInsn(LLOAD, last);
+        ctx.insn(LCMP);
+        ctx.jumpInsn(IFGT, end);
+        ctx.visitLabel(retry);
+        ++ctx.tainted; // disable argument-nulling - we're in cycle
+        f.genClosureInit(ctx);
+        f.body.gen(ctx);
+        --ctx.tainted;
+        ctx.visitLine(line);
+        ctx.insn(POP); // ignore return value
+        ctx.varInsn(LLOAD, counter.var);
+        ctx.varInsn(LLOAD, last);
+        ctx.insn(LCMP);
+        ctx.jumpInsn(IFEQ, end);
+        ctx.varInsn(LLOAD, counter.var);
+        ctx.insn(LCONST_1);
+        ctx.insn(LADD);
+        ctx.varInsn(LSTORE, counter.var);
+        ctx.jumpInsn(GOTO, retry);
+        ctx.visitLabel(end);
+        ctx.insn(ACONST_NULL);
+    }
+
+    /*
+     * for [a .. b] do i: ... done is compiled into counted loop.
+     * The long counter is used when a is integer and b is small enough
+     * to not overflow it, otherwise the loop steps using Num.add.
+     * The from variable is nulled to mark the counter mode.
+     */
+    private void genRangeLoop(Ctx ctx, Range range, Function f,
+                              LoadVar arg, int line) {
+        Label retry = new Label(), slowNext = new Label(),
+              body = new Label(), slowInc = new Label(), end = new Label();
+        boolean argUsed = f.isArgUsed();
+        int from = ctx.localVarCount++, to = ctx.localVarCount++;
+        int counter = ctx.localVarCount;
+        ctx.localVarCount += 2;
+        ctx.insn(LCONST_0);
+        ctx.varInsn(LSTORE, counter);
+        range.from.gen(ctx);
+        ctx.visitLine(line);
+        ctx.typeInsn(CHECKCAST, "yeti/lang/Num");
+        ctx.varInsn(ASTORE, from);
+        range.to.gen(ctx);
+        ctx.visitLine(line);
+        ctx.typeInsn(CHECKCAST, "yeti/lang/Num");
+        ctx.insn(DUP);
+        ctx.varInsn(ASTORE, to);
+        ctx.ldcInsn(new Long(Long.MAX_VALUE));
+        ctx.methodInsn(INVOKEVIRTUAL, "yeti/lang/Num", "rCompare", "(J)I");
+        ctx.jumpInsn(IFLE, retry);
+        ctx.load(from).typeInsn(INSTANCEOF, "yeti/lang/IntNum");
+        ctx.jumpInsn(IFEQ, retry);
+        ctx.load(from).methodInsn(INVOKEVIRTUAL, "yeti/lang/Num",
+                                  "longValue", "()J");
+        ctx.varInsn(LSTORE, counter);
+        ctx.insn(ACONST_NULL);
+        ctx.varInsn(ASTORE, from);
+        // start of loop
+        ctx.visitLabel(retry);
+        ctx.load(from).jumpInsn(IFNONNULL, slowNext);
+        ctx.load(to).varInsn(LLOAD, counter);
+        ctx.methodInsn(INVOKEVIRTUAL, "yeti/lang/Num", "rCompare", "(J)I");
+        ctx.jumpInsn(IFGT, end);
+        if (argUsed) { // box only when the value is really used
+            ctx.varInsn(LLOAD, counter);
+            ctx.methodInsn(INVOKESTATIC, "yeti/lang/IntNum", "valueOf",
+                           "(J)Lyeti/lang/IntNum;");
+        }
+        ctx.jumpInsn(GOTO, body);
+        ctx.visitLabel(slowNext);
+        ctx.load(from).load(to);
+        ctx.methodInsn(INVOKEVIRTUAL, "yeti/lang/Num",
+                       "compareTo", "(Ljava/lang/Object;)I");
+        ctx.jumpInsn(IFGT, end);
+        if (argUsed)
+            ctx.load(from);
+        ctx.visitLabel(body);
+        if (argUsed)
+            ctx.varInsn(ASTORE, arg.var = ctx.localVarCount++);
+        ++ctx.tainted; // disable argument-nulling - we're in cycle
+        f.genClosureInit(ctx);
+        f.body.gen(ctx);
+        --ctx.tainted;
+        ctx.visitLine(line);
+        ctx.insn(POP); // ignore return value
+        // next
+        ctx.load(from).jumpInsn(IFNONNULL, slowInc);
+        ctx.varInsn(LLOAD, counter);
+        ctx.insn(LCONST_1);
+        ctx.insn(LADD);
+        ctx.varInsn(LSTORE, counter);
+        ctx.jumpInsn(GOTO, retry);
+        ctx.visitLabel(slowInc);
+        ctx.load(from).insn(LCONST_1);
+        ctx.methodInsn(INVOKEVIRTUAL, "yeti/lang/Num",
+                       "add", "(J)Lyeti/lang/Num;");
+        ctx.varInsn(ASTORE, from);
+        ctx.jumpInsn(GOTO, retry);
+        ctx.visitLabel(end);
+        ctx.insn(ACONST_NULL);
+    }
 }
 
 final class Compose extends Core2 {
@@ -483,6 +615,18 @@ abstract class BinOpRef extends BindRef {
             binGenIf(ctx, arg1, arg2, to, ifTrue);
         }
 
+        void genLong(Ctx ctx) {
+            binGenLong(ctx, arg1, arg2);
+        }
+
+        void genDouble(Ctx ctx) {
+            binGenDouble(ctx, arg1, arg2);
+        }
+
+        boolean flagop(int fl) {
+            return binFlagop(fl, arg1, arg2);
+        }
+
         void markTail() {
             if (markTail2) {
                 arg2.markTail();
@@ -516,11 +660,94 @@ abstract class BinOpRef extends BindRef {
         throw new UnsupportedOperationException("binGenIf");
     }
 
+    void binGenLong(Ctx ctx, Code arg1, Code arg2) {
+        throw new UnsupportedOperationException("binGenLong");
+    }
+
+    void binGenDouble(Ctx ctx, Code arg1, Code arg2) {
+        throw new UnsupportedOperationException("binGenDouble");
+    }
+
+    boolean binFlagop(int fl, Code arg1, Code arg2) {
+        return false;
+    }
+
+    boolean flagop(int fl) {
+        return (fl & STD_CONST) != 0;
+    }
+}
+
+// Math functions taking and returning double.
+final class MathFun extends StaticRef implements Binder {
+    private String method;
+
+    MathFun(String fun, String method) {
+        super("yeti/lang/std$" + fun, "_", YetiType.NUM_TO_NUM,
+              null, false, 0);
+        this.method = method;
+        binder = this;
+    }
+
+    public BindRef getRef(int line) {
+        return this;
+    }
+
+    Code apply(final Code arg, final YType res, final int line) {
+        return new Code() {
+            { type = res; }
+
+            void gen(Ctx ctx) {
+                ctx.typeInsn(NEW, "yeti/lang/FloatNum");
+                ctx.insn(DUP);
+                genDouble(ctx);
+                ctx.visitInit("yeti/lang/FloatNum", "(D)V");
+                ctx.forceType("yeti/lang/Num");
+            }
+
+            void genDouble(Ctx ctx) {
+                arg.genDouble(ctx);
+                ctx.visitLine(line);
+                ctx.methodInsn(INVOKESTATIC, "java/lang/Math",
+                               method, "(D)D");
+            }
+
+            boolean flagop(int fl) {
+                return (fl & DOUBLE_NUM) != 0;
+            }
+        };
+    }
+
     boolean flagop(int fl) {
         return (fl & STD_CONST) != 0;
     }
 }
 
+// Counter of the for loop over integer range, kept in long variable.
+final class LongCounter extends Code {
+    int var;
+    private boolean small;
+
+    LongCounter(boolean small) {
+        type = YetiType.NUM_TYPE;
+        this.small = small;
+    }
+
+    void gen(Ctx ctx) {
+        ctx.varInsn(LLOAD, var);
+        ctx.methodInsn(INVOKESTATIC, "yeti/lang/IntNum", "valueOf",
+                       "(J)Lyeti/lang/IntNum;");
+        ctx.forceType("yeti/lang/Num");
+    }
+
+    void genLong(Ctx ctx) {
+        ctx.varInsn(LLOAD, var);
+    }
+
+    boolean flagop(int fl) {
+        return (fl & (LONG_NUM | PURE)) != 0 || small && (fl & SMALL_NUM) != 0;
+    }
+}
+
 final class ArithOpFun extends BinOpRef {
     private String method;
     private int line;
@@ -538,19 +765,100 @@ final class ArithOpFun extends BinOpRef {
         return this; // XXX should copy for type?
     }
 
+    /*
+     * Results of bitwise operations and of +, - and * on small integers
+     * are known to fit into long, so these are computed unboxed.
+     * The and with integer constant is always long, as IntNum.and
+     * takes the longValue of its argument.
+     */
+    boolean binFlagop(int fl, Code arg1, Code arg2) {
+        if ((fl & DOUBLE_NUM) != 0) // FloatNum operations give FloatNum
+            return (method == "add" || method == "sub" ||
+                    method == "mul" || method == "div") &&
+                   (arg1.flagop(DOUBLE_NUM) || arg2.flagop(DOUBLE_NUM));
+        if ((fl & (LONG_NUM | SMALL_NUM)) == 0)
+            return false;
+        boolean small = (fl & SMALL_NUM) != 0;
+        if (method == "and" && !small && arg2.flagop(INT_NUM))
+            return true;
+        if (method == "and" || method == "or" || method == "xor")
+            return arg1.flagop(fl) && arg2.flagop(fl);
+        if (method == "rem") // |a % b| is less than both |a| and |b|
+            return arg1.flagop(LONG_NUM) && arg2.flagop(LONG_NUM) &&
+                   (!small || arg1.flagop(fl) || arg2.flagop(fl));
+        if (method == "intDiv")
+            return !small && arg1.flagop(LONG_NUM) && arg2.flagop(LONG_NUM);
+        return !small && (method == "add" || method == "sub" ||
+                          method == "mul") &&
+               arg1.flagop(SMALL_NUM) && arg2.flagop(SMALL_NUM);
+    }
+
+    void binGenLong(Ctx ctx, Code arg1, Code arg2) {
+        arg1.genLong(ctx);
+        arg2.genLong(ctx);
+        ctx.visitLine(line);
+        ctx.insn(method == "and" ? LAND : method == "or" ? LOR :
+                 method == "xor" ? LXOR : method == "rem" ? LREM :
+                 method == "intDiv" ? LDIV : method == "add" ? LADD :
+                 method == "sub" ? LSUB : LMUL);
+    }
+
+    // sections with numeric constant, like (* 2), can apply unboxed
+    Code apply2nd(final Code arg2, final YType t, int line) {
+        final int op = method == "add" ? 0 : method == "sub" ? 1 :
+                       method == "mul" ? 2 : method == "div" ? 3 : -1;
+        if (op < 0 || !(arg2 instanceof NumericConstant))
+            return super.apply2nd(arg2, t, line);
+        return new Code() {
+            { type = t; }
+
+            boolean flagop(int fl) {
+                return (fl & UNBOXED_FUN) != 0;
+            }
+
+            void gen(Ctx ctx) {
+                ctx.typeInsn(NEW, "yeti/lang/Arith2nd");
+                ctx.insn(DUP);
+                ctx.intConst(op);
+                arg2.gen(ctx);
+                ctx.visitInit("yeti/lang/Arith2nd", "(ILyeti/lang/Num;)V");
+            }
+        };
+    }
+
+    // float arithmetic is done on doubleValues of both arguments
+    void binGenDouble(Ctx ctx, Code arg1, Code arg2) {
+        arg1.genDouble(ctx);
+        arg2.genDouble(ctx);
+        ctx.visitLine(line);
+        ctx.insn(method == "add" ? DADD : method == "sub" ? DSUB :
+                 method == "mul" ? DMUL : DDIV);
+    }
+
     void binGen(Ctx ctx, Code arg1, Code arg2) {
-        if (method == "and" && arg2 instanceof NumericConstant &&
-            ((NumericConstant) arg2).flagop(INT_NUM)) {
-            ctx.typeInsn(NEW, "yeti/lang/IntNum");
+        if (binFlagop(DOUBLE_NUM, arg1, arg2)) {
+            ctx.typeInsn(NEW, "yeti/lang/FloatNum");
             ctx.insn(DUP);
-            arg1.gen(ctx);
+            binGenDouble(ctx, arg1, arg2);
+            ctx.visitInit("yeti/lang/FloatNum", "(D)V");
+            ctx.forceType("yeti/lang/Num");
+            return;
+        }
+        if (binFlagop(LONG_NUM, arg1, arg2)) {
+            binGenLong(ctx, arg1, arg2);
+            ctx.methodInsn(INVOKESTATIC, "yeti/lang/IntNum", "valueOf",
+                           "(J)Lyeti/lang/IntNum;");
+            ctx.forceType("yeti/lang/Num");
+            return;
+        }
+        if ((method == "add" || method == "sub" || method == "mul") &&
+                arg1.flagop(LONG_NUM) && arg2.flagop(LONG_NUM)) {
+            // overflow is checked by IntNum, promoting into BigNum
+            arg1.genLong(ctx);
+            arg2.genLong(ctx);
             ctx.visitLine(line);
-            ctx.typeInsn(CHECKCAST, "yeti/lang/Num");
-            ctx.methodInsn(INVOKEVIRTUAL, "yeti/lang/Num",
-                                "longValue", "()J");
-            ((NumericConstant) arg2).genInt(ctx, false);
-            ctx.insn(LAND);
-            ctx.visitInit("yeti/lang/IntNum", "(J)V");
+            ctx.methodInsn(INVOKESTATIC, "yeti/lang/IntNum",
+                           method, "(JJ)Lyeti/lang/Num;");
             ctx.forceType("yeti/lang/Num");
             return;
         }
@@ -653,6 +961,23 @@ final class CompareFun extends BoolBinOp {
             if (!eq && ctx.compilation.isGCJ)
                 ctx.typeInsn(CHECKCAST, "java/lang/Comparable");
             ctx.insn(SWAP); // 1-2
+        } else if (arg1.flagop(DOUBLE_NUM) && (arg2.flagop(DOUBLE_NUM) ||
+                        arg2.flagop(LONG_NUM) && !arg2.flagop(INT_NUM)) ||
+                   !eq && arg1.flagop(LONG_NUM) && arg2.flagop(DOUBLE_NUM)) {
+            // same as FloatNum equals/compareTo, where NaN compares as 0
+            arg1.genDouble(ctx);
+            arg2.genDouble(ctx);
+            ctx.visitLine(line);
+            ctx.insn(op == COND_LT || op == COND_GE ? DCMPG : DCMPL);
+            ctx.jumpInsn(OPS[op], to);
+            return;
+        } else if (arg1.flagop(LONG_NUM) && arg2.flagop(LONG_NUM)) {
+            arg1.genLong(ctx);
+            arg2.genLong(ctx);
+            ctx.visitLine(line);
+            ctx.insn(LCMP);
+            ctx.jumpInsn(OPS[op], to);
+            return;
         } else {
             arg1.gen(ctx);
             ctx.visitLine(line);
@@ -1136,6 +1461,21 @@ final class StrOp extends StaticRef implements Binder {
             genIf(ctx, null, false);
         }
 
+        // full application of String method returning int gives long
+        boolean flagop(int fl) {
+            if ((fl & (LONG_NUM | SMALL_NUM)) == 0)
+                return super.flagop(fl);
+            int argc = 0;
+            for (StrApply a = this; a != null; a = a.prev)
+                ++argc;
+            return argc == argTypes.length && sig.endsWith(")I");
+        }
+
+        void genLong(Ctx ctx) {
+            genIf(ctx, null, true);
+        }
+
+        // ifTrue without jump label means generating unconverted long
         void genIf(Ctx ctx, Label to, boolean ifTrue) {
             List argv = new ArrayList();
             for (StrApply a = this; a != null; a = a.prev) {
@@ -1164,6 +1504,8 @@ final class StrOp extends StaticRef implements Binder {
                                 method, sig);
             if (to != null) { // really genIf
                 ctx.jumpInsn(ifTrue ? IFNE : IFEQ, to);
+            } else if (ifTrue) {
+                ctx.insn(I2L);
             } else if (type.deref().type == YetiType.STR) {
                 ctx.forceType("java/lang/String;");
             } else {
@@ -114,7 +114,7 @@ class Apply extends Code {
         ctx.visitLine(to.line);
         ctx.typeInsn(CHECKCAST, "yeti/lang/Fun");
         if (to == this) {
-            ctx.visitApply(arg, line);
+            ctx.visitApply(arg, line, to.fun.flagop(UNBOXED_FUN));
         } else {
             to.arg.gen(ctx);
             arg.gen(ctx);
@@ -394,7 +394,8 @@ final class Capture extends CaptureRef implements CaptureWrapper, CodeGen {
     }
 
     boolean flagop(int fl) {
-        return (fl & (PURE | ASSIGN)) != 0 && ref.flagop(fl);
+        return (fl & (PURE | ASSIGN | LONG_NUM | SMALL_NUM | DOUBLE_NUM |
+                      UNBOXED_FUN)) != 0 && ref.flagop(fl);
     }
 
     public void gen2(Ctx ctx, Code value, int _) {
@@ -612,8 +613,24 @@ final class Function extends CapturingClosure implements Binder {
             }
         }
 
+        void genLong(Ctx ctx) {
+            if (uncaptureArg != null)
+                uncaptureArg.genLong(ctx);
+            else
+                super.genLong(ctx);
+        }
+
+        void genDouble(Ctx ctx) {
+            if (uncaptureArg != null)
+                uncaptureArg.genDouble(ctx);
+            else
+                super.genDouble(ctx);
+        }
+
         boolean flagop(int fl) {
-            return (fl & PURE) != 0;
+            return (fl & PURE) != 0 || uncaptureArg != null &&
+                (fl & (LONG_NUM | SMALL_NUM | DOUBLE_NUM)) != 0 &&
+                uncaptureArg.flagop(fl);
         }
     };
 
@@ -627,6 +644,11 @@ final class Function extends CapturingClosure implements Binder {
         return arg;
     }
 
+    // whether the function body refers to its argument at all
+    boolean isArgUsed() {
+        return argUsed != 0;
+    }
+
     // uncaptures captured variables if possible
     // useful for function inlineing, don't work with self-refs
     boolean uncapture(Code arg) {
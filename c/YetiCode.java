@@ -46,11 +46,11 @@ import yeti.lang.Num;
 import yeti.lang.RatNum;
 import yeti.lang.IntNum;
 import yeti.lang.BigNum;
+import yeti.lang.FloatNum;
 
 final class Constants implements Opcodes {
     final Map constants = new HashMap();
     private Ctx sb;
-    Map structClasses = new HashMap();
     int anonymousClassCounter;
     String sourceName;
     Ctx ctx;
@@ -105,8 +105,7 @@ final class Constants implements Opcodes {
     }
 
     // generates [Ljava/lang/String;[Z into stack, using constant cache
-    void structInitArg(Ctx ctx_, StructField[] fields,
-                       int fieldCount, boolean nomutable) {
+    void structInitArg(Ctx ctx_, StructField[] fields, int fieldCount) {
         if (sb == null) {
             sb = ctx.newMethod(ACC_STATIC, "<clinit>", "()V");
         }
@@ -123,7 +122,7 @@ final class Constants implements Opcodes {
             }
         }
         stringArray(ctx_, fieldNameArr);
-        if (nomutable || mutableCount == 0) {
+        if (mutableCount == 0) {
             ctx_.insn(ACONST_NULL);
             return;
         }
@@ -161,6 +160,7 @@ final class CompileCtx implements Opcodes {
     private Map definedClasses = new HashMap();
     private List unstoredClasses;
     List postGen = new ArrayList();
+    Map structClasses = new HashMap();
     boolean isGCJ;
     ClassFinder classPath;
     Map types = new HashMap();
@@ -566,6 +566,9 @@ final class Ctx implements Opcodes {
     void genInt(Code arg, int line) {
         if (arg instanceof NumericConstant) {
             intConst(((NumericConstant) arg).num.intValue());
+        } else if (arg.flagop(Code.LONG_NUM)) {
+            arg.genLong(this);
+            insn(L2I);
         } else {
             arg.gen(this);
             visitLine(line);
@@ -673,11 +676,31 @@ final class Ctx implements Opcodes {
     }
 
     void visitApply(Code arg, int line) {
-        arg.gen(this);
+        visitApply(arg, line, false);
+    }
+
+    // Known numbers are passed unboxed when the function is known to
+    // override applyL/applyD (otherwise it would only box it again).
+    // Constants are boxed already.
+    void visitApply(Code arg, int line, boolean unboxed) {
+        String name = "apply";
+        String descr = "(Ljava/lang/Object;)Ljava/lang/Object;";
+        if (!unboxed || arg instanceof NumericConstant) {
+            arg.gen(this);
+        } else if (arg.flagop(Code.LONG_NUM)) {
+            arg.genLong(this);
+            name = "applyL";
+            descr = "(J)Ljava/lang/Object;";
+        } else if (arg.flagop(Code.DOUBLE_NUM)) {
+            arg.genDouble(this);
+            name = "applyD";
+            descr = "(D)Ljava/lang/Object;";
+        } else {
+            arg.gen(this);
+        }
         insn(-1);
         visitLine(line);
-        m.visitMethodInsn(INVOKEVIRTUAL, "yeti/lang/Fun",
-                "apply", "(Ljava/lang/Object;)Ljava/lang/Object;");
+        m.visitMethodInsn(INVOKEVIRTUAL, "yeti/lang/Fun", name, descr);
     }
 
     void jumpInsn(int opcode, Label label) {
@@ -757,6 +780,18 @@ abstract class Code implements Opcodes {
     // code object is a list range
     static final int LIST_RANGE = 0x100;
 
+    // code evaluates to an integer fitting into long, genLong can be used
+    static final int LONG_NUM   = 0x200;
+
+    // LONG_NUM with value fitting into int (so +, - and * can't overflow)
+    static final int SMALL_NUM  = 0x400;
+
+    // code evaluates always to float, genDouble can be used
+    static final int DOUBLE_NUM = 0x800;
+
+    // function value overriding Fun.applyL/applyD (like Arith2nd)
+    static final int UNBOXED_FUN = 0x1000;
+
     YType type;
     boolean polymorph;
 
@@ -768,6 +803,28 @@ abstract class Code implements Opcodes {
      */
     abstract void gen(Ctx ctx);
 
+    // Generates the value as primitive long, instead of boxed Num.
+    // Valid only when flagop(LONG_NUM) holds.
+    void genLong(Ctx ctx) {
+        gen(ctx);
+        ctx.typeInsn(CHECKCAST, "yeti/lang/Num");
+        ctx.methodInsn(INVOKEVIRTUAL, "yeti/lang/Num", "longValue", "()J");
+    }
+
+    // Generates the value as primitive double, instead of boxed Num.
+    // Valid only when flagop(DOUBLE_NUM) or flagop(LONG_NUM) holds.
+    void genDouble(Ctx ctx) {
+        if (flagop(LONG_NUM)) {
+            genLong(ctx);
+            ctx.insn(L2D);
+        } else {
+            gen(ctx);
+            ctx.typeInsn(CHECKCAST, "yeti/lang/Num");
+            ctx.methodInsn(INVOKEVIRTUAL, "yeti/lang/Num",
+                           "doubleValue", "()D");
+        }
+    }
+
     // Some "functions" may have special kinds of apply
     Code apply(Code arg, YType res, int line) {
         return new Apply(res, this, arg, line);
@@ -988,10 +1045,22 @@ final class NumericConstant extends Code implements CodeGen {
     }
 
     boolean flagop(int fl) {
-        return ((fl & INT_NUM) != 0 && num instanceof IntNum) ||
+        return ((fl & (INT_NUM | LONG_NUM)) != 0 && num instanceof IntNum) ||
+               (fl & SMALL_NUM) != 0 && num instanceof IntNum &&
+                    num.longValue() >= Integer.MIN_VALUE &&
+                    num.longValue() <= Integer.MAX_VALUE ||
+               (fl & DOUBLE_NUM) != 0 && num instanceof FloatNum ||
                (fl & STD_CONST) != 0;
     }
 
+    void genLong(Ctx ctx) {
+        ctx.ldcInsn(new Long(num.longValue()));
+    }
+
+    void genDouble(Ctx ctx) {
+        ctx.ldcInsn(new Double(num.doubleValue()));
+    }
+
     boolean genInt(Ctx ctx, boolean small) {
         if (!(num instanceof IntNum)) {
             return false;
@@ -1281,6 +1350,35 @@ final class MethodCall extends JavaExpr {
         }
     }
 
+    boolean flagop(int fl) {
+        if ((fl & (LONG_NUM | SMALL_NUM | DOUBLE_NUM)) != 0 &&
+                method.returnType.javaType != null) {
+            String descr = method.returnType.javaType.description;
+            if ((fl & DOUBLE_NUM) != 0)
+                return descr == "D" || descr == "F";
+            return descr == "B" || descr == "S" || descr == "I" ||
+                   descr == "J" && (fl & SMALL_NUM) == 0;
+        }
+        return super.flagop(fl);
+    }
+
+    void genDouble(Ctx ctx) {
+        String descr = method.returnType.javaType.description;
+        if (descr != "D" && descr != "F") {
+            super.genDouble(ctx);
+            return;
+        }
+        _gen(ctx);
+        if (descr == "F")
+            ctx.insn(F2D);
+    }
+
+    void genLong(Ctx ctx) {
+        _gen(ctx);
+        if (method.returnType.javaType.description != "J")
+            ctx.insn(I2L);
+    }
+
     void genIf(Ctx ctx, Label to, boolean ifTrue) {
         if (method.returnType.javaType != null &&
                 method.returnType.javaType.description == "Z") {
@@ -1480,13 +1578,48 @@ abstract class SelectMember extends BindRef implements CodeGen {
         this.line = line;
     }
 
+    /*
+     * Each site has its own Selector as inline cache (keyed by this).
+     * On hit get(int) is invoked from the site, so the JVM profiles the
+     * structure classes seen there and not in the shared Selector code.
+     * Known small structures (Struct3/Struct6) are searched by name,
+     * as their compare chain is cheaper than the cache check.
+     */
     void gen(Ctx ctx) {
+        YType t = st.type.deref();
+        if (t.type == YetiType.STRUCT && t.partialMembers == null &&
+                t.finalMembers != null && t.finalMembers.size() <= 6) {
+            st.gen(ctx);
+            ctx.visitLine(line);
+            //ctx.typeInsn(CHECKCAST, "yeti/lang/Struct");
+            ctx.ldcInsn(name);
+            ctx.methodInsn(INVOKEINTERFACE, "yeti/lang/Struct",
+                    "get", "(Ljava/lang/String;)Ljava/lang/Object;");
+            return;
+        }
+        SelectMemberFun sel =
+            new SelectMemberFun(new YType(YetiType.FUN,
+                                    new YType[] { st.type, type }),
+                                new String[] { name });
+        ctx.constant(this, new SimpleCode(sel, null, sel.type, 0));
         st.gen(ctx);
         ctx.visitLine(line);
-        //ctx.typeInsn(CHECKCAST, "yeti/lang/Struct");
-        ctx.ldcInsn(name);
+        ctx.insn(DUP2);
+        ctx.methodInsn(INVOKESTATIC, "yeti/lang/Selector", "index",
+                       "(Lyeti/lang/Fun;Ljava/lang/Object;)I");
+        ctx.insn(DUP);
+        Label miss = new Label(), end = new Label();
+        ctx.jumpInsn(IFLT, miss);
         ctx.methodInsn(INVOKEINTERFACE, "yeti/lang/Struct",
-                "get", "(Ljava/lang/String;)Ljava/lang/Object;");
+                       "get", "(I)Ljava/lang/Object;");
+        ctx.insn(SWAP);
+        ctx.insn(POP);
+        ctx.jumpInsn(GOTO, end);
+        ctx.visitLabel(miss);
+        ctx.insn(POP);
+        ctx.methodInsn(INVOKEVIRTUAL, "yeti/lang/Fun",
+                       "apply", "(Ljava/lang/Object;)Ljava/lang/Object;");
+        ctx.visitLabel(end);
     }
 
     public void gen2(Ctx ctx, Code setValue, int _) {
@@ -1701,6 +1834,8 @@ final class BindExpr extends SeqExpr implements Binder, CaptureWrapper {
     Ref refs;
     int evalId = -1;
     private boolean directBind;
+    // float value kept unboxed in local variable
+    private boolean doubleVar;
     private String directField;
     private String myClass;
 
@@ -1711,6 +1846,12 @@ final class BindExpr extends SeqExpr implements Binder, CaptureWrapper {
         void gen(Ctx ctx) {
             if (directBind) {
                 st.gen(ctx);
+            } else if (doubleVar) {
+                ctx.typeInsn(NEW, "yeti/lang/FloatNum");
+                ctx.insn(DUP);
+                ctx.varInsn(DLOAD, id);
+                ctx.visitInit("yeti/lang/FloatNum", "(D)V");
+                ctx.forceType("yeti/lang/Num");
             } else {
                 genPreGet(ctx);
                 genGet(ctx);
@@ -1739,9 +1880,27 @@ final class BindExpr extends SeqExpr implements Binder, CaptureWrapper {
                 return directBind || directField != null;
             if ((fl & MODULE_REQUIRED) != 0)
                 return directField != null;
+            if ((fl & (LONG_NUM | SMALL_NUM | DOUBLE_NUM | UNBOXED_FUN)) != 0)
+                return !var && st.flagop(fl);
             return (fl & PURE) != 0 && !var;
         }
 
+        void genLong(Ctx ctx) {
+            if (directBind)
+                st.genLong(ctx);
+            else
+                super.genLong(ctx);
+        }
+
+        void genDouble(Ctx ctx) {
+            if (directBind)
+                st.genDouble(ctx);
+            else if (doubleVar)
+                ctx.varInsn(DLOAD, id);
+            else
+                super.genDouble(ctx);
+        }
+
         CaptureWrapper capture() {
             captured = true;
             return var ? BindExpr.this : null;
@@ -1859,6 +2018,15 @@ final class BindExpr extends SeqExpr implements Binder, CaptureWrapper {
                 "$".concat(Integer.toString(ctx.constants.ctx.fieldCounter++));
             ctx.cw.visitField(ACC_STATIC | ACC_SYNTHETIC, directField,
                               javaDescr, null, null).visitEnd();
+        } else if (mvar == -1 && !var && evalId == -1 &&
+                   st.flagop(DOUBLE_NUM)) {
+            // boxed only on use, arithmetic gets it as double
+            doubleVar = true;
+            id = ctx.localVarCount;
+            ctx.localVarCount += 2;
+            st.genDouble(ctx);
+            ctx.varInsn(DSTORE, id);
+            return;
         } else if (mvar == -1) {
             id = ctx.localVarCount++;
         }
@@ -2010,6 +2178,12 @@ final class ListConstructor extends Code implements CodeGen {
         return key;
     }
 
+    // the range, when list consists only of a single range
+    Range singleRange() {
+        return items.length == 1 && items[0] instanceof Range
+                ? (Range) items[0] : null;
+    }
+
     boolean flagop(int fl) {
         return (fl & STD_CONST) != 0 && (key != null || items.length == 0) ||
                (fl & EMPTY_LIST) != 0 && items.length == 0 ||
@@ -2028,19 +2202,24 @@ final class MapConstructor extends Code {
     }
 
     void gen(Ctx ctx) {
-        ctx.typeInsn(NEW, "yeti/lang/Hash");
+        // number and string keyed hashes use open addressing tables
+        int keyType = type.param[1].deref().type;
+        String hash = keyType == YetiType.NUM ? "yeti/lang/NumHash" :
+                      keyType == YetiType.STR ? "yeti/lang/StrHash" :
+                                                "yeti/lang/Hash";
+        ctx.typeInsn(NEW, hash);
         ctx.insn(DUP);
         if (keyItems.length > 16) {
             ctx.intConst(keyItems.length);
-            ctx.visitInit("yeti/lang/Hash", "(I)V");
+            ctx.visitInit(hash, "(I)V");
         } else {
-            ctx.visitInit("yeti/lang/Hash", "()V");
+            ctx.visitInit(hash, "()V");
         }
         for (int i = 0; i < keyItems.length; ++i) {
             ctx.insn(DUP);
             keyItems[i].gen(ctx);
             items[i].gen(ctx);
-            ctx.methodInsn(INVOKEVIRTUAL, "yeti/lang/Hash", "put",
+            ctx.methodInsn(INVOKEVIRTUAL, hash, "put",
                 "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;");
             ctx.insn(POP);
         }
@@ -252,6 +252,15 @@ public class YetiType implements YetiParser {
         bindScope("negate", new BuiltIn(20),
         bindScope("undef_str", new BuiltIn(23),
         bindScope("strChar", new BuiltIn(16),
+        bindScope("ln", new MathFun("ln", "log"),
+        bindScope("exp", new MathFun("exp", "exp"),
+        bindScope("cos", new MathFun("cos", "cos"),
+        bindScope("sin", new MathFun("sin", "sin"),
+        bindScope("tan", new MathFun("tan", "tan"),
+        bindScope("acos", new MathFun("acos", "acos"),
+        bindScope("asin", new MathFun("asin", "asin"),
+        bindScope("atan", new MathFun("atan", "atan"),
+        bindScope("sqrt", new MathFun("sqrt", "sqrt"),
         bindStr("strLength", fun(STR_TYPE, NUM_TYPE), "length", "()I",
         bindStr("strUpper", fun(STR_TYPE, STR_TYPE), "toUpperCase",
                 "()Ljava/lang/String;",
@@ -299,7 +308,7 @@ public class YetiType implements YetiParser {
         bindImport("Long", "java/lang/Long",
         bindImport("Double", "java/lang/Double",
         bindImport("String", "java/lang/String",
-    null)))))))))))))))))))))))))))))))))))))))))))))))))))))))))))))))))))))));
+    null))))))))))))))))))))))))))))))))))))))))))))))))))))))))))))))))))))))))))))))));
 
     static final Scope ROOT_SCOPE_SYS =
         bindImport("System", "java/lang/System",
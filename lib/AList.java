@@ -50,7 +50,7 @@ public abstract class AList extends AIter implements Comparable, Coll {
     public abstract AList smap(Fun f);
 
     public AList map(Fun f) {
-        return new MapList(this, f);
+        return Pipeline.map(this, f);
     }
 
     public AList find(Fun pred) {
@@ -33,14 +33,27 @@ package yeti.lang;
 import java.io.Serializable;
 
 public abstract class AStruct implements Struct, Serializable {
+    // lists are hashed by this many first elements
+    private static final int LIST_HASH_ELEMENTS = 8;
+
     final String[] names;
     private final boolean[] vars;
+    // cached hashCode, 0 if not known
+    private transient int hash;
 
     public AStruct(String[] names_, boolean[] vars_) {
         names = names_;
         vars = vars_;
     }
 
+    // plain structure with given fields, chosen like the compiler does
+    static AStruct create(String[] names, boolean[] vars) {
+        int n = names.length;
+        return n <= 3 ? new Struct3(names, vars)
+             : n <= 6 ? (AStruct) new Struct6(names, vars)
+             : new GenericStruct(names, vars);
+    }
+
     public int count() {
         return names.length;
     }
@@ -62,35 +75,87 @@ public abstract class AStruct implements Struct, Serializable {
         Unsafe.unsafeThrow(new NoSuchFieldException(name));
     }
 
+    /**
+     * Structures are equal, when they have the same fields with equal
+     * values (the field set must match, as the hashCode depends on it).
+     */
     public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof Struct))
+            return false;
         Struct st = (Struct) o;
-        int acnt = count(), bcnt = st.count(), i = 0, j = 0;
-        while (i < acnt && j < bcnt) {
-            String an, bn;
-            if ((an = name(i)) == (bn = st.name(j))) {
-                Object a = get(i);
-                Object b = st.get(j);
-                if (a != b && (a == null || !a.equals(b)))
-                    return false;
-            } else {
-                int cmp = an.compareTo(bn);
-                if (cmp > 0) --i;
-                if (cmp < 0) --j;
-            }
-            ++i;
-            ++j;
+        int cnt = count();
+        if (st.count() != cnt)
+            return false;
+        for (int i = 0; i < cnt; ++i) {
+            String an = name(i), bn = st.name(i);
+            if (an != bn && !an.equals(bn))
+                return false;
+        }
+        for (int i = 0; i < cnt; ++i) {
+            Object a = get(i);
+            Object b = st.get(i);
+            if (a != b && (a == null || !a.equals(b)))
+                return false;
         }
         return true;
     }
 
-    public String toString() {
-        StringBuffer sb = new StringBuffer().append('{');
-        for (int cnt = count(), i = 0; i < cnt; ++i) {
-            if (i != 0)
-                sb.append(", ");
-            sb.append(name(i)).append('=').append(Core.show(get(i)));
+    /**
+     * Structural hash of the field values, consistent with equals.
+     * Var fields aren't hashed, and arrays and hashes only by their
+     * kind, so a structure key can be modified without breaking the
+     * hash table, and the hash can be cached (nested structures are
+     * hashed once).
+     */
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = 1;
+            for (int i = 0, cnt = count(); i < cnt; ++i)
+                if (!var(i))
+                    h = 31 * h + valueHash(get(i));
+            if (h == 0)
+                h = 1;
+            hash = h;
         }
-        sb.append('}');
-        return sb.toString();
+        return h;
+    }
+
+    /**
+     * Whether the field is var (or property), and may change.
+     */
+    boolean var(int field) {
+        return vars != null && vars[field];
+    }
+
+    // hash of the value parts that can't change
+    private static int valueHash(Object v) {
+        if (v == null)
+            return 0;
+        // mutable containers, the contents can change after hashing
+        if (v instanceof AMList)
+            return 2;
+        if (v instanceof ByKey)
+            return 3;
+        if (v instanceof Tag) {
+            Tag t = (Tag) v;
+            return t.name.hashCode() - valueHash(t.value) * 17;
+        }
+        if (!(v instanceof AList))
+            return v.hashCode();
+        // long lists shouldn't be walked on each hash lookup,
+        // equal lists have the same first elements anyway
+        int h = 1;
+        AIter i = ((AList) v).isEmpty() ? null : (AList) v;
+        for (int n = LIST_HASH_ELEMENTS; i != null && --n >= 0;
+             i = i.next())
+            h = 31 * h + valueHash(i.first());
+        return h;
+    }
+
+    public String toString() {
+        return Show.toString(this);
     }
 }
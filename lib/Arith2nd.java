@@ -0,0 +1,83 @@
+// ex: se sts=4 sw=4 expandtab:
+
+/**
+ * Yeti core library - arithmetic section.
+ *
+ * Copyright (c) 2008 Madis Janson
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package yeti.lang;
+
+/**
+ * Arithmetic operator with numeric constant as second argument,
+ * like (* 2). Implements applyL and applyD without boxing the argument.
+ */
+public final class Arith2nd extends Fun {
+    public static final int ADD = 0;
+    public static final int SUB = 1;
+    public static final int MUL = 2;
+    public static final int DIV = 3;
+
+    private final int op;
+    private final Num arg2;
+
+    public Arith2nd(int op, Num arg2) {
+        this.op = op;
+        this.arg2 = arg2;
+    }
+
+    public Object apply(Object arg) {
+        Num a = (Num) arg;
+        switch (op) {
+        case ADD: return a.add(arg2);
+        case SUB: return a.sub(arg2);
+        case MUL: return a.mul(arg2);
+        default: return a.div(arg2);
+        }
+    }
+
+    public Object applyL(long a) {
+        if (!(arg2 instanceof IntNum) || op == DIV) {
+            return apply(IntNum.valueOf(a));
+        }
+        long b = arg2.longValue();
+        switch (op) {
+        case ADD: return IntNum.add(a, b);
+        case SUB: return IntNum.sub(a, b);
+        default: return IntNum.mul(a, b);
+        }
+    }
+
+    // FloatNum arithmetic uses doubleValue of the other argument
+    public Object applyD(double a) {
+        double b = arg2.doubleValue();
+        switch (op) {
+        case ADD: return new FloatNum(a + b);
+        case SUB: return new FloatNum(a - b);
+        case MUL: return new FloatNum(a * b);
+        default: return new FloatNum(a / b);
+        }
+    }
+}
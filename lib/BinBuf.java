@@ -36,7 +36,7 @@ class BinBuf extends Fun {
 
     BinBuf(byte[] _buf, int _len) {
         buf = _buf;
-        len = new IntNum(_len);
+        len = IntNum.valueOf(_len);
     }
 
     public Object apply(Object cb) {
@@ -47,7 +47,7 @@ class BinBuf extends Fun {
         byte[] buf = new byte[0 < limit && limit <= 65536 ? limit : 8192];
         int l = 0, n;
         try {
-            while ((n = ((Number) read.apply(buf, new IntNum(l)))
+            while ((n = ((Number) read.apply(buf, IntNum.valueOf(l)))
                         .intValue()) >= 0)
                 if (buf.length - (l += n) < 2048) {
                     int reserve = buf.length << 1;
@@ -0,0 +1,646 @@
+// ex: se sts=4 sw=4 expandtab:
+
+/**
+ * Yeti core library - binary value codec.
+ *
+ * Copyright (c) 2010 Madis Janson
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package yeti.lang;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Compact binary format for Yeti values.
+ *
+ * Every value starts with a one byte tag. Integers are zig-zag varints,
+ * strings are char count followed by modified UTF-8. Lists and hashes are
+ * terminated by END, so lazy lists are forced and streamed without counting
+ * them first. Structure shapes (field names and mutability) and variant
+ * names are written once and referenced by index afterwards. Strings,
+ * arrays, hashes, structures and variants that occur several times are
+ * written once and back-referenced, which also preserves sharing and
+ * cycles through mutable values. Other serializable objects are embedded
+ * using Java serialization.
+ *
+ * The decoder buffers its input, so it may consume bytes after the value.
+ */
+public final class BinCodec {
+    private static final int NULL = 0;
+    private static final int FALSE = 1;
+    private static final int TRUE = 2;
+    private static final int INT = 3;
+    private static final int FLOAT = 4;
+    private static final int RAT = 5;
+    private static final int BIG = 6;
+    private static final int STR = 7;
+    private static final int LIST = 8;
+    private static final int ARRAY = 9;
+    private static final int LONGS = 10;
+    private static final int DOUBLES = 11;
+    private static final int HASH = 12;
+    private static final int STRUCT = 13;
+    private static final int TAG = 14;
+    private static final int REF = 15;
+    private static final int END = 16;
+    private static final int JAVA = 17;
+
+    // placeholder for variants whose value is being decoded
+    private static final Object PENDING = new Object();
+
+    private byte[] buf = new byte[8192];
+    private int pos;
+    private int lim;
+    private OutputStream out;
+    private InputStream in;
+    private Fun io;
+    private int objCount;
+    private int shapeCount;
+
+    // encoder state
+    private IdentityHashMap seen;
+    private IdentityHashMap symbols;
+    // Shape chains by names array, as structures with same names
+    // can differ in var fields
+    private IdentityHashMap shapes;
+    private byte[] varBits = new byte[8];
+    private final int[] refIndex = new int[1];
+
+    // decoder state
+    private Object[] objs;
+    private String[] syms;
+    private int symCount;
+    private Object[] shapeDefs;
+
+    private BinCodec() {
+    }
+
+    private static BinCodec encoder() {
+        BinCodec c = new BinCodec();
+        c.seen = new IdentityHashMap();
+        c.symbols = new IdentityHashMap();
+        c.shapes = new IdentityHashMap();
+        return c;
+    }
+
+    private static BinCodec decoder() {
+        BinCodec c = new BinCodec();
+        c.objs = new Object[32];
+        c.syms = new String[16];
+        c.shapeDefs = new Object[16];
+        return c;
+    }
+
+    public static void write(Object value, OutputStream out)
+            throws IOException {
+        BinCodec c = encoder();
+        c.out = out;
+        c.value(value);
+        c.flush();
+    }
+
+    /**
+     * Writes value using binary output handles write function,
+     * which is called as write buf len.
+     */
+    public static void write(Object value, Fun write) throws IOException {
+        BinCodec c = encoder();
+        c.io = write;
+        c.value(value);
+        c.flush();
+    }
+
+    public static byte[] encode(Object value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            write(value, out);
+        } catch (IOException ex) {
+            Unsafe.unsafeThrow(ex);
+        }
+        return out.toByteArray();
+    }
+
+    public static Object read(InputStream in) throws IOException {
+        BinCodec c = decoder();
+        c.in = in;
+        return c.value(c.get());
+    }
+
+    /**
+     * Reads value using binary input handles read function,
+     * which is called as read buf from and returns count or -1 at EOF.
+     */
+    public static Object read(Fun read) throws IOException {
+        BinCodec c = decoder();
+        c.io = read;
+        return c.value(c.get());
+    }
+
+    public static Object decode(byte[] data) {
+        BinCodec c = decoder();
+        c.buf = data;
+        c.lim = data.length;
+        try {
+            return c.value(c.get());
+        } catch (IOException ex) {
+            Unsafe.unsafeThrow(ex);
+            return null;
+        }
+    }
+
+    // encoder
+
+    private void flush() throws IOException {
+        if (out != null)
+            out.write(buf, 0, pos);
+        else
+            io.apply(buf, IntNum.valueOf(pos));
+        pos = 0;
+    }
+
+    private void ensure(int n) throws IOException {
+        if (buf.length - pos < n)
+            flush();
+    }
+
+    private void put(int b) throws IOException {
+        if (pos >= buf.length)
+            flush();
+        buf[pos++] = (byte) b;
+    }
+
+    private void uint(long v) throws IOException {
+        ensure(10);
+        for (; (v & ~0x7fL) != 0; v >>>= 7)
+            buf[pos++] = (byte) (v | 0x80);
+        buf[pos++] = (byte) v;
+    }
+
+    private void sint(long v) throws IOException {
+        uint(v << 1 ^ v >> 63);
+    }
+
+    private void fixed64(long v) throws IOException {
+        ensure(8);
+        for (int i = 56; i >= 0; i -= 8)
+            buf[pos++] = (byte) (v >>> i);
+    }
+
+    private void chars(String s) throws IOException {
+        int n = s.length();
+        uint(n);
+        for (int i = 0; i < n; ++i) {
+            char c = s.charAt(i);
+            ensure(3);
+            if (c > 0 && c < 0x80) {
+                buf[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[pos++] = (byte) (0xc0 | c >> 6);
+                buf[pos++] = (byte) (0x80 | c & 0x3f);
+            } else {
+                buf[pos++] = (byte) (0xe0 | c >> 12);
+                buf[pos++] = (byte) (0x80 | c >> 6 & 0x3f);
+                buf[pos++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+    }
+
+    private void bytes(byte[] b) throws IOException {
+        uint(b.length);
+        if (b.length > buf.length - pos) {
+            flush();
+            if (b.length > buf.length) {
+                if (out != null)
+                    out.write(b);
+                else
+                    io.apply(b, IntNum.valueOf(b.length));
+                return;
+            }
+        }
+        System.arraycopy(b, 0, buf, pos, b.length);
+        pos += b.length;
+    }
+
+    // interned field and variant names
+    private void symbol(String name) throws IOException {
+        Integer id = (Integer) symbols.get(name);
+        if (id != null) {
+            uint(id.intValue() + 1);
+        } else {
+            symbols.put(name, new Integer(symbols.size()));
+            uint(0);
+            chars(name);
+        }
+    }
+
+    private void value(Object v) throws IOException {
+        if (v == null) {
+            put(NULL);
+        } else if (v instanceof Boolean) {
+            put(((Boolean) v).booleanValue() ? TRUE : FALSE);
+        } else if (v instanceof IntNum) {
+            put(INT);
+            sint(((IntNum) v).longValue());
+        } else if (v instanceof FloatNum) {
+            put(FLOAT);
+            fixed64(Double.doubleToRawLongBits(((FloatNum) v).doubleValue()));
+        } else if (v instanceof RatNum) {
+            put(RAT);
+            sint(((RatNum) v).numerator());
+            uint(((RatNum) v).denominator());
+        } else if (v instanceof BigNum) {
+            put(BIG);
+            bytes(((BigNum) v).toBigInteger().toByteArray());
+        } else {
+            Integer id = (Integer) seen.get(v);
+            if (id != null) {
+                put(REF);
+                uint(id.intValue());
+                return;
+            }
+            // lazy lists are not remembered, as the table would keep
+            // the whole forced list in memory while streaming it
+            id = new Integer(objCount++);
+            if (!(v instanceof LazyList))
+                seen.put(v, id);
+            if (v instanceof String) {
+                put(STR);
+                chars((String) v);
+            } else if (v instanceof AList) {
+                list((AList) v);
+            } else if (v instanceof Struct) {
+                struct((Struct) v);
+            } else if (v instanceof Tag) {
+                put(TAG);
+                symbol(((Tag) v).name);
+                value(((Tag) v).value);
+            } else if (v instanceof ByKey && v instanceof Map) {
+                put(HASH);
+                Iterator i = ((Map) v).entrySet().iterator();
+                while (i.hasNext()) {
+                    Map.Entry e = (Map.Entry) i.next();
+                    value(e.getKey());
+                    value(e.getValue());
+                }
+                put(END);
+            } else if (v instanceof Serializable) {
+                put(JAVA);
+                ByteArrayOutputStream bout = new ByteArrayOutputStream();
+                ObjectOutputStream oout = new ObjectOutputStream(bout);
+                oout.writeObject(v);
+                oout.close();
+                bytes(bout.toByteArray());
+            } else {
+                throw new NotSerializableException(v.getClass().getName());
+            }
+        }
+    }
+
+    private void list(AList l) throws IOException {
+        if (l instanceof LongArray) {
+            LongArray a = (LongArray) l;
+            put(LONGS);
+            uint(a.length());
+            for (int i = a.start, e = a.size; i < e; ++i)
+                sint(a.num(i).longValue());
+        } else if (l instanceof DoubleArray) {
+            DoubleArray a = (DoubleArray) l;
+            put(DOUBLES);
+            uint(a.length());
+            for (int i = a.start, e = a.size; i < e; ++i)
+                fixed64(Double.doubleToRawLongBits(a.num(i).doubleValue()));
+        } else if (l instanceof MList) {
+            MList a = (MList) l;
+            Object[] array = a.array();
+            int i = a.start, e = a.size;
+            put(ARRAY);
+            uint(e > i ? e - i : 0);
+            while (i < e)
+                value(array[i++]);
+        } else {
+            put(LIST);
+            for (AIter i = l.isEmpty() ? null : l; i != null; i = i.next())
+                value(i.first());
+            put(END);
+        }
+    }
+
+    private static final class Shape {
+        final byte[] vars;
+        final int id;
+        final Shape next;
+
+        Shape(byte[] vars, int id, Shape next) {
+            this.vars = vars;
+            this.id = id;
+            this.next = next;
+        }
+    }
+
+    private void struct(Struct st) throws IOException {
+        String[] names = null;
+        if (st instanceof AStruct)
+            names = ((AStruct) st).names;
+        int n = st.count(), nb = n + 7 >>> 3;
+        if (varBits.length < nb)
+            varBits = new byte[nb];
+        byte[] bits = varBits;
+        int[] index = refIndex;
+        for (int i = 0; i < nb; ++i) {
+            int b = 0;
+            for (int j = 0; j < 8 && (i << 3) + j < n; ++j) {
+                // ref gives the field index only for var fields
+                st.ref((i << 3) + j, index, 0);
+                if (index[0] >= 0)
+                    b |= 1 << j;
+            }
+            bits[i] = (byte) b;
+        }
+        Shape shape = names == null ? null : (Shape) shapes.get(names);
+    find:
+        for (; shape != null; shape = shape.next) {
+            for (int i = 0; i < nb; ++i)
+                if (shape.vars[i] != bits[i])
+                    continue find;
+            break;
+        }
+        put(STRUCT);
+        if (shape != null) {
+            uint(shape.id + 1);
+        } else {
+            if (names != null) {
+                byte[] vars = new byte[nb];
+                System.arraycopy(bits, 0, vars, 0, nb);
+                shapes.put(names, new Shape(vars, shapeCount,
+                                            (Shape) shapes.get(names)));
+            }
+            ++shapeCount;
+            uint(0);
+            uint(n);
+            for (int i = 0; i < n; ++i)
+                symbol(st.name(i));
+            for (int i = 0; i < nb; ++i)
+                put(bits[i] & 0xff);
+        }
+        for (int i = 0; i < n; ++i)
+            value(st.get(i));
+    }
+
+    // decoder
+
+    private int get() throws IOException {
+        while (pos >= lim) {
+            if (in == null && io == null)
+                throw new EOFException();
+            int n = in != null ? in.read(buf, 0, buf.length)
+                : ((Number) io.apply(buf, IntNum._0)).intValue();
+            if (n < 0)
+                throw new EOFException();
+            pos = 0;
+            lim = n;
+        }
+        return buf[pos++] & 0xff;
+    }
+
+    private long getUint() throws IOException {
+        long v = 0;
+        int b, shift = 0;
+        while (((b = get()) & 0x80) != 0) {
+            v |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        }
+        return v | (long) b << shift;
+    }
+
+    private long getSint() throws IOException {
+        long v = getUint();
+        return v >>> 1 ^ -(v & 1);
+    }
+
+    private int getCount() throws IOException {
+        long n = getUint();
+        if (n > Integer.MAX_VALUE)
+            throw new StreamCorruptedException("Invalid length " + n);
+        return (int) n;
+    }
+
+    private long getFixed64() throws IOException {
+        long v = 0;
+        for (int i = 0; i < 8; ++i)
+            v = v << 8 | get();
+        return v;
+    }
+
+    private String getChars() throws IOException {
+        char[] s = new char[getCount()];
+        for (int i = 0; i < s.length; ++i) {
+            int c = get();
+            if (c >= 0xe0)
+                c = (c & 0xf) << 12 | (get() & 0x3f) << 6 | get() & 0x3f;
+            else if (c >= 0xc0)
+                c = (c & 0x1f) << 6 | get() & 0x3f;
+            s[i] = (char) c;
+        }
+        return new String(s);
+    }
+
+    private byte[] getBytes() throws IOException {
+        byte[] b = new byte[getCount()];
+        for (int i = 0; i < b.length;) {
+            if (pos >= lim) {
+                b[i++] = (byte) get();
+            } else {
+                int n = Math.min(lim - pos, b.length - i);
+                System.arraycopy(buf, pos, b, i, n);
+                pos += n;
+                i += n;
+            }
+        }
+        return b;
+    }
+
+    private String getSymbol() throws IOException {
+        int id = getCount();
+        if (id == 0) {
+            if (symCount >= syms.length) {
+                String[] tmp = new String[symCount * 2];
+                System.arraycopy(syms, 0, tmp, 0, symCount);
+                syms = tmp;
+            }
+            return syms[symCount++] = getChars().intern();
+        }
+        if (id > symCount)
+            throw new StreamCorruptedException("Invalid name " + id);
+        return syms[id - 1];
+    }
+
+    private int register(Object v) {
+        if (objCount >= objs.length) {
+            Object[] tmp = new Object[objCount * 2];
+            System.arraycopy(objs, 0, tmp, 0, objCount);
+            objs = tmp;
+        }
+        objs[objCount] = v;
+        return objCount++;
+    }
+
+    private Object value(int tag) throws IOException {
+        int n;
+        switch (tag) {
+        case NULL:
+            return null;
+        case FALSE:
+            return Boolean.FALSE;
+        case TRUE:
+            return Boolean.TRUE;
+        case INT:
+            return IntNum.valueOf(getSint());
+        case FLOAT:
+            return new FloatNum(Double.longBitsToDouble(getFixed64()));
+        case RAT:
+            n = (int) getSint();
+            return new RatNum(n, (int) getUint());
+        case BIG:
+            return new BigNum(new BigInteger(getBytes()));
+        case STR: {
+            String s = getChars();
+            register(s);
+            return s;
+        }
+        case LIST: {
+            MList l = new MList();
+            int id = register(l);
+            while ((tag = get()) != END)
+                l.add(value(tag));
+            if (l.isEmpty())
+                return objs[id] = null;
+            return l;
+        }
+        case ARRAY: {
+            Object[] a = new Object[getCount()];
+            MList l = new MList(a);
+            register(l);
+            for (int i = 0; i < a.length; ++i)
+                a[i] = value(get());
+            return l;
+        }
+        case LONGS: {
+            NumArray a = new LongArray();
+            register(a);
+            a.reserve(n = getCount());
+            while (--n >= 0)
+                a.add(IntNum.valueOf(getSint()));
+            return a;
+        }
+        case DOUBLES: {
+            NumArray a = new DoubleArray();
+            register(a);
+            a.reserve(n = getCount());
+            while (--n >= 0)
+                a.add(new FloatNum(Double.longBitsToDouble(getFixed64())));
+            return a;
+        }
+        case HASH: {
+            Hash h = new Hash();
+            register(h);
+            while ((tag = get()) != END) {
+                Object key = value(tag);
+                h.put(key, value(get()));
+            }
+            return h;
+        }
+        case STRUCT:
+            return struct();
+        case TAG: {
+            String name = getSymbol();
+            int id = register(PENDING);
+            return objs[id] = new Tag(value(get()), name);
+        }
+        case REF: {
+            long id = getUint();
+            if (id >= objCount)
+                throw new StreamCorruptedException("Invalid reference " + id);
+            Object v = objs[(int) id];
+            if (v == PENDING)
+                throw new StreamCorruptedException(
+                            "Cyclic reference through variant");
+            return v;
+        }
+        case JAVA: {
+            int id = register(PENDING);
+            ObjectInputStream oin =
+                new ObjectInputStream(new ByteArrayInputStream(getBytes()));
+            try {
+                return objs[id] = oin.readObject();
+            } catch (ClassNotFoundException ex) {
+                Unsafe.unsafeThrow(ex);
+                return null;
+            }
+        }
+        }
+        throw new StreamCorruptedException("Invalid value tag " + tag);
+    }
+
+    private Object struct() throws IOException {
+        int id = getCount(), n;
+        String[] names;
+        boolean[] vars;
+        if (id == 0) {
+            names = new String[n = getCount()];
+            for (int i = 0; i < n; ++i)
+                names[i] = getSymbol();
+            vars = null;
+            for (int i = 0; i < n; i += 8)
+                for (int bits = get(), j = 0; j < 8 && i + j < n; ++j)
+                    if ((bits & 1 << j) != 0) {
+                        if (vars == null)
+                            vars = new boolean[n];
+                        vars[i + j] = true;
+                    }
+            if ((id = shapeDefs.length) <= shapeCount * 2) {
+                Object[] tmp = new Object[id * 2];
+                System.arraycopy(shapeDefs, 0, tmp, 0, id);
+                shapeDefs = tmp;
+            }
+            shapeDefs[shapeCount * 2] = names;
+            shapeDefs[shapeCount++ * 2 + 1] = vars;
+        } else if (id <= shapeCount) {
+            names = (String[]) shapeDefs[id * 2 - 2];
+            vars = (boolean[]) shapeDefs[id * 2 - 1];
+            n = names.length;
+        } else {
+            throw new StreamCorruptedException("Invalid structure " + id);
+        }
+        AStruct st = AStruct.create(names, vars);
+        register(st);
+        for (int i = 0; i < n; ++i)
+            st.set(names[i], value(get()));
+        return st;
+    }
+}
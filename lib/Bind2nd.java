@@ -40,6 +40,6 @@ public final class Bind2nd extends Fun {
     }
 
     public Object apply(Object arg) {
-        return ((Fun) fun.apply(arg)).apply(arg2);
+        return fun.apply(arg, arg2);
     }
 }
@@ -0,0 +1,107 @@
+// ex: se sts=4 sw=4 expandtab:
+
+/**
+ * Yeti core library - unrolled list.
+ *
+ * Copyright (c) 2010 Madis Janson
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package yeti.lang;
+
+/**
+ * Unrolled list cell, holding a chunk of array elements followed by
+ * the rest list. Strict lists produced in bulk use it instead of LList
+ * cell per element. Cells for the following elements of the chunk are
+ * created only by rest(), iteration goes through the array.
+ */
+final class ChunkList extends LList {
+    static final int CHUNK = 32;
+
+    private final Object[] items;
+    private final int i;
+    private final int end;
+    // cell for items[i + 1], so walking with rest() allocates it once
+    private volatile AList restCell;
+
+    private static final class Iter extends AIter {
+        private final Object[] items;
+        private int i;
+        private final int end;
+        private final AList tail;
+
+        Iter(Object[] items, int i, int end, AList tail) {
+            this.items = items;
+            this.i = i;
+            this.end = end;
+            this.tail = tail;
+        }
+
+        public Object first() {
+            return items[i];
+        }
+
+        public AIter next() {
+            return ++i < end ? this : (AIter) tail;
+        }
+    }
+
+    // rest is the list following items[i .. end - 1]
+    ChunkList(Object[] items, int i, int end, AList rest) {
+        super(items[i], rest);
+        this.items = items;
+        this.i = i;
+        this.end = end;
+    }
+
+    public AList rest() {
+        if (i + 1 >= end)
+            return rest;
+        AList r = restCell;
+        if (r == null)
+            restCell = r = new ChunkList(items, i + 1, end, rest);
+        return r;
+    }
+
+    public AIter next() {
+        return i + 1 < end ? new Iter(items, i + 1, end, rest) : (AIter) rest;
+    }
+
+    /** Reversed copy of src, made of CHUNK element cells. */
+    static AList reverse(AIter src) {
+        AList l = null;
+        Object[] items = null;
+        int n = 0;
+        for (; src != null; src = src.next()) {
+            if (n == 0) {
+                if (items != null)
+                    l = new ChunkList(items, 0, CHUNK, l);
+                items = new Object[CHUNK];
+                n = CHUNK;
+            }
+            items[--n] = src.first();
+        }
+        return items == null ? l : new ChunkList(items, n, CHUNK, l);
+    }
+}
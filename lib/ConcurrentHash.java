@@ -0,0 +1,278 @@
+// ex: se sts=4 sw=4 expandtab:
+
+/**
+ * Yeti core library - concurrent hash.
+ *
+ * Copyright (c) 2010 Madis Janson
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package yeti.lang;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Lock striped hash for sharing between threads.
+ * Keys are spread over segments having separate locks, so threads
+ * accessing different keys don't usually contend. Iteration sees
+ * a snapshot of each segment at the time it was reached.
+ * The segments are serialized as key-value pairs, like in OpenHash.
+ */
+public final class ConcurrentHash extends AbstractMap
+        implements ByKey, Coll, Serializable {
+    private static final int SEGMENT_BITS = 4;
+    private transient HashMap[] segments;
+    private volatile Fun defaultFun;
+
+    public ConcurrentHash() {
+        init();
+    }
+
+    private void init() {
+        segments = new HashMap[1 << SEGMENT_BITS];
+        for (int i = 0; i < segments.length; ++i)
+            segments[i] = new HashMap();
+    }
+
+    private HashMap segment(Object key) {
+        int h = key == null ? 0 : key.hashCode() * 0x9e3779b9;
+        return segments[h >>> 32 - SEGMENT_BITS];
+    }
+
+    public Object get(Object key) {
+        HashMap seg = segment(key);
+        synchronized (seg) {
+            return seg.get(key);
+        }
+    }
+
+    public boolean containsKey(Object key) {
+        HashMap seg = segment(key);
+        synchronized (seg) {
+            return seg.containsKey(key);
+        }
+    }
+
+    // must be called holding the segment lock
+    private Object vget(HashMap seg, Object key) {
+        Object x;
+        if ((x = seg.get(key)) == null && !seg.containsKey(key)) {
+            Fun f = defaultFun;
+            if (f != null) {
+                return f.apply(key);
+            }
+            throw new NoSuchKeyException("Key not found (" + key + ")");
+        }
+        return x;
+    }
+
+    public Object vget(Object key) {
+        HashMap seg = segment(key);
+        synchronized (seg) {
+            return vget(seg, key);
+        }
+    }
+
+    public Object put(Object key, Object value) {
+        HashMap seg = segment(key);
+        synchronized (seg) {
+            return seg.put(key, value);
+        }
+    }
+
+    public Object remove(Object key) {
+        HashMap seg = segment(key);
+        synchronized (seg) {
+            return seg.remove(key);
+        }
+    }
+
+    /**
+     * Atomically replaces the value with result of fun applied to it.
+     * The fun is called holding the lock, so it should be quick.
+     */
+    public Object update(Object key, Fun fun) {
+        HashMap seg = segment(key);
+        synchronized (seg) {
+            Object v = fun.apply(vget(seg, key));
+            seg.put(key, v);
+            return v;
+        }
+    }
+
+    /**
+     * Puts the value, if the key was missing. Returns the current value.
+     */
+    public Object putIfAbsent(Object key, Object value) {
+        HashMap seg = segment(key);
+        synchronized (seg) {
+            Object v = seg.get(key);
+            if (v == null && !seg.containsKey(key))
+                seg.put(key, v = value);
+            return v;
+        }
+    }
+
+    /**
+     * Adds num to the value, missing value counts as 0.
+     */
+    public Num incrementBy(Object key, Num num) {
+        HashMap seg = segment(key);
+        synchronized (seg) {
+            Num v = (Num) seg.get(key);
+            seg.put(key, v = v == null ? num : v.add(num));
+            return v;
+        }
+    }
+
+    public void removeAll(AList keys) {
+        if (keys != null && !keys.isEmpty())
+            for (AIter i = keys; i != null; i = i.next())
+                remove(i.first());
+    }
+
+    public int size() {
+        int n = 0;
+        for (int i = 0; i < segments.length; ++i)
+            synchronized (segments[i]) {
+                n += segments[i].size();
+            }
+        return n;
+    }
+
+    public long length() {
+        return size();
+    }
+
+    public boolean isEmpty() {
+        for (int i = 0; i < segments.length; ++i)
+            synchronized (segments[i]) {
+                if (!segments[i].isEmpty())
+                    return false;
+            }
+        return true;
+    }
+
+    public void clear() {
+        for (int i = 0; i < segments.length; ++i)
+            synchronized (segments[i]) {
+                segments[i].clear();
+            }
+    }
+
+    public AList asList() {
+        return new MList(values().toArray());
+    }
+
+    public void setDefault(Fun fun) {
+        defaultFun = fun;
+    }
+
+    public Object copy() {
+        ConcurrentHash result = new ConcurrentHash();
+        for (int i = 0; i < segments.length; ++i)
+            synchronized (segments[i]) {
+                result.segments[i].putAll(segments[i]);
+            }
+        result.defaultFun = defaultFun;
+        return result;
+    }
+
+    private final class Iter implements Iterator {
+        private int seg;
+        private Iterator i;
+        private Object last;
+
+        public boolean hasNext() {
+            while (i == null || !i.hasNext()) {
+                if (seg >= segments.length)
+                    return false;
+                HashMap s = segments[seg++];
+                synchronized (s) {
+                    i = new ArrayList(s.entrySet()).iterator();
+                }
+            }
+            return true;
+        }
+
+        public Object next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            Map.Entry e = (Map.Entry) i.next();
+            last = e.getKey();
+            return e;
+        }
+
+        public void remove() {
+            ConcurrentHash.this.remove(last);
+        }
+    }
+
+    public Set entrySet() {
+        return new AbstractSet() {
+            public Iterator iterator() {
+                return new Iter();
+            }
+
+            public int size() {
+                return ConcurrentHash.this.size();
+            }
+        };
+    }
+
+    public String toString() {
+        return Show.toString(this);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        // the snapshot from entrySet, as size may change meanwhile
+        Object[] entries = entrySet().toArray();
+        out.defaultWriteObject();
+        out.writeInt(entries.length);
+        for (int i = 0; i < entries.length; ++i) {
+            Map.Entry e = (Map.Entry) entries[i];
+            out.writeObject(e.getKey());
+            out.writeObject(e.getValue());
+        }
+    }
+
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        init();
+        for (int n = in.readInt(); --n >= 0;)
+            put(in.readObject(), in.readObject());
+    }
+}
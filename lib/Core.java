@@ -47,10 +47,10 @@ public final class Core {
             }
             Num n = (Num) x;
             if (n.rCompare(0x7fffffffL) > 0) {
-                return new IntNum(rnd.nextInt(n.intValue()));
+                return IntNum.valueOf(rnd.nextInt(n.intValue()));
             }
             if (n.rCompare(Long.MAX_VALUE) > 0) {
-                return new IntNum((long) (n.doubleValue() * rnd.nextDouble()));
+                return IntNum.valueOf((long) (n.doubleValue() * rnd.nextDouble()));
             }
             // XXX
             return new FloatNum(Math.floor(n.doubleValue() * rnd.nextDouble()));
@@ -110,7 +110,7 @@ public final class Core {
             return new RatNum(Integer.parseInt(s), shift);
         } while (false);
         if ((l - st) <= 19) {
-            return new IntNum(Long.parseLong(s));
+            return IntNum.valueOf(Long.parseLong(s));
         }
         return new BigNum(s);
     }
@@ -138,31 +138,7 @@ public final class Core {
             return "[]";
         }
         if (o instanceof String) {
-            // TODO escaping
-            char[] s = ((String) o).toCharArray();
-            StringBuffer r = new StringBuffer("\"");
-            int p = 0, i = 0, cnt = s.length;
-            for (String c; i < cnt; ++i) {
-                if (s[i] == '\\') {
-                    c = "\\\\";
-                } else if (s[i] == '"') {
-                    c = "\\\"";
-                } else if (s[i] == '\n') {
-                    c = "\\n";
-                } else if (s[i] == '\r') {
-                    c = "\\r";
-                } else if (s[i] == '\t') {
-                    c = "\\t";
-                } else {
-                    continue;
-                }
-                r.append(s, p, i - p);
-                r.append(c);
-                p = i + 1;
-            }
-            r.append(s, p, i - p);
-            r.append('"');
-            return r.toString();
+            return Show.quote((String) o);
         }
         return o.toString();
     }
@@ -39,6 +39,23 @@ public abstract class Fun implements Serializable {
         return ((Fun) apply(a)).apply(b);
     }
 
+    /**
+     * Applies function to integer argument, avoiding the box for
+     * functions that override it (arithmetic sections like (* 2)).
+     * Compiler calls this only when the function is known to override it,
+     * library code walking primitive arrays and ranges calls it always.
+     */
+    public Object applyL(long a) {
+        return apply(IntNum.valueOf(a));
+    }
+
+    /**
+     * Applies function to float argument, like applyL.
+     */
+    public Object applyD(double a) {
+        return apply(new FloatNum(a));
+    }
+
     public String toString() {
         return '<' + getClass().getName() + '>';
     }
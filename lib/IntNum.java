@@ -34,18 +34,38 @@ import java.math.BigInteger;
 import java.math.BigDecimal;
 
 public final class IntNum extends Num {
-    public static final IntNum __2 = new IntNum(-2);
-    public static final IntNum __1 = new IntNum(-1);
-    public static final IntNum _0 = new IntNum(0);
-    public static final IntNum _1 = new IntNum(1);
-    public static final IntNum _2 = new IntNum(2);
-    public static final IntNum _3 = new IntNum(3);
-    public static final IntNum _4 = new IntNum(4);
-    public static final IntNum _5 = new IntNum(5);
-    public static final IntNum _6 = new IntNum(6);
-    public static final IntNum _7 = new IntNum(7);
-    public static final IntNum _8 = new IntNum(8);
-    public static final IntNum _9 = new IntNum(9);
+    private static final int CACHE_LOW = -1024;
+    private static final int CACHE_MAX = 1 << 20;
+    private static final IntNum[] CACHE;
+
+    static {
+        // yeti.intcache gives the biggest cached value, default 65535,
+        // clamped to CACHE_MAX, and anything below CACHE_LOW disables it
+        int high = 65535;
+        try {
+            high = Integer.getInteger("yeti.intcache", high).intValue();
+        } catch (SecurityException ex) {
+        }
+        if (high > CACHE_MAX)
+            high = CACHE_MAX;
+        CACHE = new IntNum[high < CACHE_LOW ? 0 : high - CACHE_LOW + 1];
+        for (int i = 0; i < CACHE.length; ++i) {
+            CACHE[i] = new IntNum(i + CACHE_LOW);
+        }
+    }
+
+    public static final IntNum __2 = valueOf(-2);
+    public static final IntNum __1 = valueOf(-1);
+    public static final IntNum _0 = valueOf(0);
+    public static final IntNum _1 = valueOf(1);
+    public static final IntNum _2 = valueOf(2);
+    public static final IntNum _3 = valueOf(3);
+    public static final IntNum _4 = valueOf(4);
+    public static final IntNum _5 = valueOf(5);
+    public static final IntNum _6 = valueOf(6);
+    public static final IntNum _7 = valueOf(7);
+    public static final IntNum _8 = valueOf(8);
+    public static final IntNum _9 = valueOf(9);
 
     private final long v;
 
@@ -57,6 +77,50 @@ public final class IntNum extends Num {
         v = num;
     }
 
+    /**
+     * Returns IntNum with given value, shared instance for small values.
+     * Should be used instead of the constructors.
+     */
+    public static IntNum valueOf(long num) {
+        if (num >= CACHE_LOW && num < CACHE_LOW + CACHE.length) {
+            return CACHE[(int) num - CACHE_LOW];
+        }
+        return new IntNum(num);
+    }
+
+    /**
+     * Sum of two longs, promoted into BigNum on overflow.
+     * Used by compiler for unboxed integer arithmetic.
+     */
+    public static Num add(long a, long b) {
+        long r = a + b;
+        if (((a ^ r) & (b ^ r)) < 0) {
+            return new BigNum(BigInteger.valueOf(a).add(
+                                BigInteger.valueOf(b)));
+        }
+        return valueOf(r);
+    }
+
+    public static Num sub(long a, long b) {
+        long r = a - b;
+        if (((a ^ b) & (a ^ r)) < 0) {
+            return new BigNum(BigInteger.valueOf(a).subtract(
+                                BigInteger.valueOf(b)));
+        }
+        return valueOf(r);
+    }
+
+    public static Num mul(long a, long b) {
+        long r = a * b;
+        if ((a < -0x7fffffffL || a > 0x7fffffffL
+             || b < -0x7fffffffL || b > 0x7fffffffL) &&
+            (a != 0 && (r / a != b || a == -1 && b == Long.MIN_VALUE))) {
+            return new BigNum(BigInteger.valueOf(a).multiply(
+                                BigInteger.valueOf(b)));
+        }
+        return valueOf(r);
+    }
+
     public Num add(Num num) {
         return num.add(v);
     }
@@ -71,7 +135,7 @@ public final class IntNum extends Num {
             return new BigNum(BigInteger.valueOf(v).add(
                                 BigInteger.valueOf(num)));
         }
-        return new IntNum(v + num);
+        return valueOf(v + num);
     }
 
     public Num add(BigInteger num) {
@@ -88,7 +152,7 @@ public final class IntNum extends Num {
             return new BigNum(BigInteger.valueOf(v).multiply(
                                 BigInteger.valueOf(num)));
         }
-        return new IntNum(v * num);
+        return valueOf(v * num);
     }
 
     public Num mul(BigInteger num) {
@@ -120,11 +184,11 @@ public final class IntNum extends Num {
     }
 
     public Num intDiv(int num) {
-        return new IntNum(v / num);
+        return valueOf(v / num);
     }
 
     public Num intDivFrom(long num) {
-        return new IntNum(num / v);
+        return valueOf(num / v);
     }
 
     public Num intDivFrom(BigInteger num) {
@@ -136,11 +200,11 @@ public final class IntNum extends Num {
     }
 
     public Num rem(int num) {
-        return new IntNum(v % num);
+        return valueOf(v % num);
     }
 
     public Num remFrom(long num) {
-        return new IntNum(num % v);
+        return valueOf(num % v);
     }
 
     public Num remFrom(BigInteger num) {
@@ -158,7 +222,7 @@ public final class IntNum extends Num {
             return new BigNum(BigInteger.valueOf(v).subtract(
                                 BigInteger.valueOf(num)));
         }
-        return new IntNum(v - num);
+        return valueOf(v - num);
     }
 
     public Num subFrom(long num) {
@@ -167,7 +231,7 @@ public final class IntNum extends Num {
             return new BigNum(BigInteger.valueOf(num).subtract(
                                 BigInteger.valueOf(v)));
         }
-        return new IntNum(num - v);
+        return valueOf(num - v);
     }
 
     public Num subFrom(RatNum num) {
@@ -179,11 +243,11 @@ public final class IntNum extends Num {
     }
 
     public Num and(Num num) {
-        return new IntNum(num.longValue() & v);
+        return valueOf(num.longValue() & v);
     }
 
     public Num and(BigInteger num) {
-        return new IntNum(num.longValue() & v);
+        return valueOf(num.longValue() & v);
     }
 
     public Num or(Num num) {
@@ -191,7 +255,7 @@ public final class IntNum extends Num {
     }
 
     public Num or(long num) {
-        return new IntNum(num | v);
+        return valueOf(num | v);
     }
 
     public Num xor(Num num) {
@@ -199,7 +263,7 @@ public final class IntNum extends Num {
     }
 
     public Num xor(long num) {
-        return new IntNum(num ^ v);
+        return valueOf(num ^ v);
     }
 
     public byte byteValue() {
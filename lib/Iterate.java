@@ -32,34 +32,29 @@ package yeti.lang;
 
 /** Yeti core library - Iterate function. */
 final class Iterate extends LList {
-    private Fun f;
+    // null after forcing, forced lists are read without locking
+    private volatile Fun f;
 
     Iterate(Object v, Fun f) {
         super(v, null);
         this.f = f;
     }
 
-    public synchronized AList rest() {
+    public AList rest() {
         if (f != null) {
-            rest = new Iterate(f.apply(first), f);
-            f = null;
+            synchronized (this) {
+                Fun fun = f;
+                if (fun != null) {
+                    rest = new Iterate(fun.apply(first), fun);
+                    f = null;
+                }
+            }
         }
         return rest;
     }
 
     public String toString() {
-        StringBuffer buf = new StringBuffer("[");
-        buf.append(Core.show(first()));
-        AIter i = rest();
-        for (int n = 0; i != null && ++n <= 100; i = i.next()) {
-            buf.append(',');
-            buf.append(Core.show(i.first()));
-        }
-        if (i != null) {
-            buf.append("...");
-        }
-        buf.append(']');
-        return buf.toString();
+        return Show.toString(this);
     }
 
     public Object copy() {
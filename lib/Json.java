@@ -0,0 +1,735 @@
+// ex: se sts=4 sw=4 expandtab:
+
+/**
+ * Yeti core library - JSON codec.
+ *
+ * Copyright (c) 2010 Madis Janson
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package yeti.lang;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * JSON reader and writer.
+ *
+ * The tokenizer works directly on its char buffer, strings without
+ * escapes are created straight from it and repeated object keys are
+ * taken from a small cache. Objects are decoded into Hash, arrays into
+ * MList and numbers into IntNum, BigNum or FloatNum, optionally wrapped
+ * into the variants of the yeti.json json type. Decoding by template
+ * builds structures of the template's shape instead.
+ */
+public final class Json {
+    private static final int KEY_CACHE = 256;
+
+    static final Tag OBJECT_START = new Tag(null, "ObjectStart");
+    static final Tag OBJECT_END = new Tag(null, "ObjectEnd");
+    static final Tag ARRAY_START = new Tag(null, "ArrayStart");
+    static final Tag ARRAY_END = new Tag(null, "ArrayEnd");
+
+    private Reader in;
+    private char[] buf;
+    private int pos;
+    private int lim;
+    // characters before buf, for error positions
+    private long offset;
+    private boolean tagged;
+    private StringBuffer sb;
+    private char[] num;
+    private String[] keys;
+    private IdentityHashMap shapes;
+
+    // event parser state: open containers and the position in the last
+    private char[] stack;
+    private int depth;
+    private boolean first;
+    private boolean afterKey;
+
+    private Json(Reader in) {
+        this.in = in;
+        buf = new char[8192];
+    }
+
+    private Json(String s) {
+        buf = s.toCharArray();
+        lim = buf.length;
+    }
+
+    private boolean fill() throws IOException {
+        if (in == null)
+            return false;
+        int n;
+        while ((n = in.read(buf, 0, buf.length)) == 0);
+        offset += lim;
+        pos = 0;
+        lim = n < 0 ? 0 : n;
+        return n > 0;
+    }
+
+    private IllegalArgumentException error(String what) {
+        return new IllegalArgumentException("JSON: " + what +
+                                            " at " + (offset + pos));
+    }
+
+    private IllegalArgumentException unexpected(int c) {
+        return error(c < 0 ? "unexpected end" : "unexpected '" + (char) c + "'");
+    }
+
+    // next character after whitespace, without consuming it
+    private int next() throws IOException {
+        for (;;) {
+            while (pos < lim) {
+                char c = buf[pos];
+                if (c != ' ' && c != '\n' && c != '\r' && c != '\t')
+                    return c;
+                ++pos;
+            }
+            if (!fill())
+                return -1;
+        }
+    }
+
+    private int read() throws IOException {
+        if (pos >= lim && !fill())
+            throw error("unexpected end");
+        return buf[pos++];
+    }
+
+    private void expect(char c) throws IOException {
+        int n = next();
+        if (n != c)
+            throw unexpected(n);
+        ++pos;
+    }
+
+    private Boolean literal(String word, Boolean value) throws IOException {
+        for (int i = 0, cnt = word.length(); i < cnt; ++i)
+            if (read() != word.charAt(i))
+                throw error("invalid literal");
+        return value;
+    }
+
+    private Object tag(Object value, String name) {
+        return tagged ? new Tag(value, name) : value;
+    }
+
+    private String string() throws IOException {
+        int start = ++pos;
+        while (pos < lim) {
+            char c = buf[pos];
+            if (c == '"')
+                return new String(buf, start, pos++ - start);
+            if (c == '\\' || c < ' ')
+                break;
+            ++pos;
+        }
+        if (sb == null)
+            sb = new StringBuffer();
+        sb.setLength(0);
+        sb.append(buf, start, pos - start);
+        for (int c; (c = read()) != '"';) {
+            if (c == '\\')
+                c = escape();
+            else if (c < ' ')
+                throw error("control character in string");
+            sb.append((char) c);
+        }
+        return sb.toString();
+    }
+
+    private int escape() throws IOException {
+        int c = read();
+        switch (c) {
+        case '"': case '\\': case '/':
+            return c;
+        case 'b': return '\b';
+        case 'f': return '\f';
+        case 'n': return '\n';
+        case 'r': return '\r';
+        case 't': return '\t';
+        case 'u':
+            int v = 0;
+            for (int i = 0; i < 4; ++i) {
+                int d = Character.digit((char) read(), 16);
+                if (d < 0)
+                    throw error("invalid unicode escape");
+                v = v << 4 | d;
+            }
+            return v;
+        }
+        throw error("invalid escape");
+    }
+
+    // object key, reusing the cached string when the same key repeats;
+    // the cached keys are interned for comparing with structure fields
+    private String key() throws IOException {
+        int c = next();
+        if (c != '"')
+            throw unexpected(c);
+        int start = pos + 1, i = start, h = 0;
+        for (; i < lim && (c = buf[i]) != '"'; ++i) {
+            if (c == '\\' || c < ' ')
+                break;
+            h = h * 31 + c;
+        }
+        String key;
+        if (i >= lim || c != '"') {
+            key = string().intern();
+        } else {
+            if (keys == null)
+                keys = new String[KEY_CACHE];
+            h = (h ^ h >>> 8) & (KEY_CACHE - 1);
+            int len = i - start;
+            pos = i + 1;
+            if ((key = keys[h]) != null && key.length() == len) {
+                for (int j = 0; j < len; ++j)
+                    if (key.charAt(j) != buf[start + j]) {
+                        key = null;
+                        break;
+                    }
+            } else {
+                key = null;
+            }
+            if (key == null)
+                keys[h] = key = new String(buf, start, len).intern();
+        }
+        expect(':');
+        return key;
+    }
+
+    private Num number() throws IOException {
+        if (num == null)
+            num = new char[32];
+        int n = 0;
+        boolean integer = true;
+        for (;; ++pos) {
+            if (pos >= lim && !fill())
+                break;
+            char c = buf[pos];
+            if (c == '.' || c == 'e' || c == 'E' || c == '+')
+                integer = false;
+            else if ((c < '0' || c > '9') && c != '-')
+                break;
+            if (n >= num.length) {
+                char[] tmp = new char[n * 2];
+                System.arraycopy(num, 0, tmp, 0, n);
+                num = tmp;
+            }
+            num[n++] = c;
+        }
+        int i = num[0] == '-' ? 1 : 0;
+        if (integer && n - i > 0 && n - i <= 18) {
+            long v = 0;
+            for (int j = i; j < n; ++j) {
+                if (num[j] == '-')
+                    throw error("invalid number");
+                v = v * 10 + (num[j] - '0');
+            }
+            return IntNum.valueOf(i == 0 ? v : -v);
+        }
+        try {
+            String s = new String(num, 0, n);
+            if (!integer)
+                return new FloatNum(Double.parseDouble(s));
+            BigInteger v = new BigInteger(s);
+            return v.bitLength() < 64 ? (Num) IntNum.valueOf(v.longValue())
+                                      : new BigNum(v);
+        } catch (NumberFormatException ex) {
+            throw error("invalid number");
+        }
+    }
+
+    private Object value() throws IOException {
+        int c = next();
+        switch (c) {
+        case '{': {
+            ++pos;
+            Hash h = new Hash();
+            if (next() == '}')
+                ++pos;
+            else
+                do {
+                    String key = key();
+                    h.put(key, value());
+                } while (more('}'));
+            return tag(h, "Object");
+        }
+        case '[': {
+            ++pos;
+            MList a = new MList();
+            if (next() == ']')
+                ++pos;
+            else
+                do {
+                    a.add(value());
+                } while (more(']'));
+            return tag(a, "Array");
+        }
+        case '"':
+            return tag(string(), "String");
+        case 't':
+            return tag(literal("true", Boolean.TRUE), "Boolean");
+        case 'f':
+            return tag(literal("false", Boolean.FALSE), "Boolean");
+        case 'n':
+            literal("null", null);
+            return tag(null, "Null");
+        }
+        if (c == '-' || c >= '0' && c <= '9')
+            return tag(number(), "Number");
+        throw unexpected(c);
+    }
+
+    // consumes separator, returning false after the closing bracket
+    private boolean more(char close) throws IOException {
+        int c = next();
+        ++pos;
+        if (c == ',')
+            return true;
+        if (c == close)
+            return false;
+        --pos;
+        throw unexpected(c);
+    }
+
+    private void skip() throws IOException {
+        for (int level = 0;;) {
+            int c = next();
+            if (c < 0)
+                throw unexpected(c);
+            if (level == 0 && (c == ',' || c == '}' || c == ']'))
+                return;
+            ++pos;
+            if (c == '"') {
+                while ((c = read()) != '"')
+                    if (c == '\\')
+                        read();
+                if (level == 0)
+                    return;
+            } else if (c == '{' || c == '[') {
+                ++level;
+            } else if ((c == '}' || c == ']') && --level == 0) {
+                return;
+            }
+        }
+    }
+
+    private Object[] shape(Struct t) {
+        if (shapes == null)
+            shapes = new IdentityHashMap();
+        Object[] shape = (Object[]) shapes.get(t);
+        if (shape == null) {
+            int n = t.count();
+            String[] names = new String[n];
+            boolean[] vars = null;
+            int[] index = new int[1];
+            for (int i = 0; i < n; ++i) {
+                names[i] = t.name(i);
+                t.ref(i, index, 0);
+                if (index[0] >= 0) {
+                    if (vars == null)
+                        vars = new boolean[n];
+                    vars[i] = true;
+                }
+            }
+            if (t instanceof AStruct && ((AStruct) t).names != null)
+                names = ((AStruct) t).names;
+            shapes.put(t, shape = new Object[] { names, vars });
+        }
+        return shape;
+    }
+
+    private static boolean optional(Object template) {
+        return template instanceof Tag && (((Tag) template).name == "Some" ||
+                                           ((Tag) template).name == "None");
+    }
+
+    private Object struct(Struct t) throws IOException {
+        Object[] shape = shape(t);
+        String[] names = (String[]) shape[0];
+        int n = names.length;
+        AStruct st = AStruct.create(names, (boolean[]) shape[1]);
+        boolean[] found = new boolean[n];
+        expect('{');
+        if (next() == '}')
+            ++pos;
+        else
+            do {
+                String key = key();
+                int i = 0;
+                while (i < n && names[i] != key)
+                    ++i;
+                if (i < n) {
+                    st.set(key, as(t.get(i)));
+                    found[i] = true;
+                } else {
+                    skip();
+                }
+            } while (more('}'));
+        for (int i = 0; i < n; ++i)
+            if (!found[i]) {
+                if (!optional(t.get(i)))
+                    throw error("missing field " + names[i]);
+                st.set(names[i], new Tag(null, "None"));
+            }
+        return st;
+    }
+
+    // decodes value into the shape of template
+    private Object as(Object t) throws IOException {
+        if (t == null)
+            return value();
+        int c = next();
+        if (t instanceof Tag) {
+            Tag tag = (Tag) t;
+            if (c == 'n' && optional(tag)) {
+                literal("null", null);
+                return new Tag(null, "None");
+            }
+            return new Tag(as(tag.value),
+                           tag.name == "None" ? "Some" : tag.name);
+        }
+        if (t instanceof String) {
+            if (c != '"')
+                throw error("expected string");
+            return string();
+        }
+        if (t instanceof Num) {
+            if (c != '-' && (c < '0' || c > '9'))
+                throw error("expected number");
+            return number();
+        }
+        if (t instanceof Boolean) {
+            if (c == 't')
+                return literal("true", Boolean.TRUE);
+            if (c == 'f')
+                return literal("false", Boolean.FALSE);
+            throw error("expected boolean");
+        }
+        if (t instanceof Struct)
+            return struct((Struct) t);
+        if (t instanceof AList) {
+            AList l = (AList) t;
+            Object elem = l.isEmpty() ? null : l.first();
+            MList a = new MList();
+            expect('[');
+            if (next() == ']')
+                ++pos;
+            else
+                do {
+                    a.add(as(elem));
+                } while (more(']'));
+            return a;
+        }
+        if (t instanceof Map) {
+            Iterator i = ((Map) t).values().iterator();
+            Object elem = i.hasNext() ? i.next() : null;
+            Hash h = new Hash();
+            expect('{');
+            if (next() == '}')
+                ++pos;
+            else
+                do {
+                    String key = key();
+                    h.put(key, as(elem));
+                } while (more('}'));
+            return h;
+        }
+        return value();
+    }
+
+    private void end() throws IOException {
+        int c = next();
+        if (c >= 0)
+            throw unexpected(c);
+    }
+
+    private Object event() throws IOException {
+        int c = next();
+        if (depth > 0) {
+            char open = stack[depth - 1];
+            if (!afterKey && c == (open == '{' ? '}' : ']')) {
+                ++pos;
+                --depth;
+                first = false;
+                return open == '{' ? OBJECT_END : ARRAY_END;
+            }
+            if (!first && !afterKey) {
+                if (c != ',')
+                    throw unexpected(c);
+                ++pos;
+            }
+            first = false;
+            if (open == '{' && !afterKey) {
+                afterKey = true;
+                return new Tag(key(), "Key");
+            }
+            afterKey = false;
+            c = next();
+        } else if (c < 0) {
+            return null;
+        }
+        if (c == '{' || c == '[') {
+            ++pos;
+            if (depth >= stack.length) {
+                char[] tmp = new char[depth * 2];
+                System.arraycopy(stack, 0, tmp, 0, depth);
+                stack = tmp;
+            }
+            stack[depth++] = (char) c;
+            first = true;
+            return c == '{' ? OBJECT_START : ARRAY_START;
+        }
+        return value();
+    }
+
+    // Events available from the buffer are read ahead into chunk,
+    // the last event read getting the lazy rest.
+    static AList events(Json json) {
+        try {
+            Object event = null;
+            try {
+                synchronized (json) {
+                    if ((event = json.event()) == null)
+                        return null;
+                    Object[] chunk = null;
+                    int n = 0;
+                    while (n < ChunkList.CHUNK && json.pos < json.lim) {
+                        if (chunk == null)
+                            chunk = new Object[ChunkList.CHUNK];
+                        chunk[n++] = event;
+                        if ((event = json.event()) == null)
+                            return new ChunkList(chunk, 0, n, null);
+                    }
+                    AList rest = new Events(event, json);
+                    return chunk == null ? rest
+                                         : new ChunkList(chunk, 0, n, rest);
+                }
+            } finally {
+                if (event == null && json.in != null)
+                    json.in.close();
+            }
+        } catch (IOException ex) {
+            Unsafe.unsafeThrow(ex);
+            return null;
+        }
+    }
+
+    private static final class Events extends LList {
+        private volatile boolean forced;
+        private Json json;
+
+        Events(Object event, Json json) {
+            super(event, null);
+            this.json = json;
+        }
+
+        public AList rest() {
+            if (!forced) {
+                synchronized (this) {
+                    if (!forced) {
+                        rest = events(json);
+                        json = null;
+                        forced = true;
+                    }
+                }
+            }
+            return rest;
+        }
+    }
+
+    private static Object parse(Json json, boolean tagged) {
+        json.tagged = tagged;
+        try {
+            Object v = json.value();
+            json.end();
+            return v;
+        } catch (IOException ex) {
+            Unsafe.unsafeThrow(ex);
+            return null;
+        }
+    }
+
+    private static Object parseAs(Json json, Object template) {
+        try {
+            Object v = json.as(template);
+            json.end();
+            return v;
+        } catch (IOException ex) {
+            Unsafe.unsafeThrow(ex);
+            return null;
+        }
+    }
+
+    /**
+     * Parses JSON text. With tagged the values are wrapped into
+     * Object, Array, String, Number, Boolean and Null variants.
+     */
+    public static Object parse(String s, boolean tagged) {
+        return parse(new Json(s), tagged);
+    }
+
+    public static Object parse(Reader in, boolean tagged) {
+        return parse(new Json(in), tagged);
+    }
+
+    /**
+     * Parses JSON text into the shape of template value. Structures in
+     * template give the object fields (unknown ones are skipped, and
+     * missing ones allowed only for Some/None fields), the first element
+     * of list or hash gives the element shape, and () accepts any value.
+     */
+    public static Object parseAs(String s, Object template) {
+        return parseAs(new Json(s), template);
+    }
+
+    public static Object parseAs(Reader in, Object template) {
+        return parseAs(new Json(in), template);
+    }
+
+    /**
+     * Lazy list of parse events (ObjectStart, ObjectEnd, ArrayStart,
+     * ArrayEnd, Key name and the tagged scalars) from the reader.
+     * Consecutive top-level values are allowed, the reader is closed
+     * at end.
+     */
+    public static AList events(Reader in) {
+        Json json = new Json(in);
+        json.tagged = true;
+        json.stack = new char[16];
+        json.first = true;
+        return events(json);
+    }
+
+    // writer
+
+    private static void string(String s, Writer out) throws IOException {
+        out.write('"');
+        int p = 0, i = 0, cnt = s.length();
+        for (String c; i < cnt; ++i) {
+            char ch = s.charAt(i);
+            if (ch == '\\') {
+                c = "\\\\";
+            } else if (ch == '"') {
+                c = "\\\"";
+            } else if (ch == '\n') {
+                c = "\\n";
+            } else if (ch == '\r') {
+                c = "\\r";
+            } else if (ch == '\t') {
+                c = "\\t";
+            } else if (ch < ' ' || ch == '\u2028' || ch == '\u2029') {
+                String hex = Integer.toHexString(ch);
+                c = "\\u0000".substring(0, 6 - hex.length()) + hex;
+            } else {
+                continue;
+            }
+            out.write(s, p, i - p);
+            out.write(c);
+            p = i + 1;
+        }
+        out.write(s, p, i - p);
+        out.write('"');
+    }
+
+    private static void value(Object o, Writer out) throws IOException {
+        while (o instanceof Tag)
+            o = ((Tag) o).value;
+        if (o == null) {
+            out.write("null");
+        } else if (o instanceof String) {
+            string((String) o, out);
+        } else if (o instanceof Boolean || o instanceof IntNum ||
+                   o instanceof BigNum) {
+            out.write(o.toString());
+        } else if (o instanceof Num) {
+            double d = ((Num) o).doubleValue();
+            out.write(Double.isNaN(d) || Double.isInfinite(d)
+                        ? "null" : Double.toString(d));
+        } else if (o instanceof AList) {
+            out.write('[');
+            AList l = (AList) o;
+            for (AIter i = l.isEmpty() ? null : l; i != null; i = i.next()) {
+                if (i != l)
+                    out.write(',');
+                value(i.first(), out);
+            }
+            out.write(']');
+        } else if (o instanceof Struct) {
+            Struct st = (Struct) o;
+            out.write('{');
+            for (int cnt = st.count(), i = 0; i < cnt; ++i) {
+                if (i != 0)
+                    out.write(',');
+                string(st.name(i), out);
+                out.write(':');
+                value(st.get(i), out);
+            }
+            out.write('}');
+        } else if (o instanceof Map) {
+            out.write('{');
+            Iterator i = ((Map) o).entrySet().iterator();
+            for (int n = 0; i.hasNext(); ++n) {
+                Map.Entry e = (Map.Entry) i.next();
+                if (n != 0)
+                    out.write(',');
+                Object key = e.getKey();
+                string(key instanceof String ? (String) key
+                                             : Show.toString(key), out);
+                out.write(':');
+                value(e.getValue(), out);
+            }
+            out.write('}');
+        } else {
+            string(o.toString(), out);
+        }
+    }
+
+    /**
+     * Writes v as JSON: lists become arrays, structures and hashes
+     * objects, variants are written as their value and () as null.
+     */
+    public static void write(Object v, Writer out) throws IOException {
+        value(v, out);
+    }
+
+    public static String toString(Object v) {
+        StringWriter w = new StringWriter();
+        try {
+            value(v, w);
+        } catch (IOException ex) {
+            Unsafe.unsafeThrow(ex);
+        }
+        return w.toString();
+    }
+}
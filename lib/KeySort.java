@@ -0,0 +1,134 @@
+// ex: se sts=4 sw=4 expandtab:
+
+/**
+ * Yeti core library - key sort.
+ *
+ * Copyright (c) 2010 Madis Janson
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package yeti.lang;
+
+/**
+ * Sort on keys taken from the elements (decorate-sort-undecorate).
+ * Each key function is applied once per element, and the keys are
+ * compared directly, without going through a yeti less-than function.
+ * The elements are sorted in MList's merge sort as {value, key...}
+ * arrays, this class being the stable not-greater comparison for it.
+ */
+public final class KeySort extends Fun2 {
+    private static final int ANY = 0;
+    private static final int NUM = 1;
+    private static final int STR = 2;
+
+    private final int[] kinds;
+    private final boolean[] desc;
+
+    private KeySort(int[] kinds, boolean[] desc) {
+        this.kinds = kinds;
+        this.desc = desc;
+    }
+
+    public Object apply(Object a, Object b) {
+        Object[] x = (Object[]) a, y = (Object[]) b;
+        for (int i = 0; i < kinds.length; ++i) {
+            Object p = x[i + 1], q = y[i + 1];
+            int c;
+            switch (kinds[i]) {
+            case NUM:
+                c = ((Num) p).compareTo(q);
+                break;
+            case STR:
+                c = ((String) p).compareTo((String) q);
+                break;
+            default:
+                c = ((Comparable) p).compareTo(q);
+            }
+            if (c != 0)
+                return (desc[i] ? c > 0 : c < 0) ? Boolean.TRUE : Boolean.FALSE;
+        }
+        return Boolean.TRUE;
+    }
+
+    private static Object[] elements(AList l) {
+        if (l instanceof AMList) {
+            AMList m = (AMList) l;
+            int n = m._size() - m.start;
+            Object[] a = new Object[n > 0 ? n : 0];
+            System.arraycopy(m.array(), m.start, a, 0, a.length);
+            return a;
+        }
+        MList m = new MList(l);
+        Object[] a = new Object[m.size];
+        System.arraycopy(m.array(), 0, a, 0, a.length);
+        return a;
+    }
+
+    private AList sort(Object[] a, Fun[] keys) {
+        for (int i = 0; i < a.length; ++i) {
+            Object[] e = new Object[keys.length + 1];
+            e[0] = a[i];
+            for (int j = 0; j < keys.length; ++j) {
+                Object k = e[j + 1] = keys[j].apply(a[i]);
+                // the generic key compares directly, when all are same
+                if (kinds[j] == ANY && i == 0)
+                    kinds[j] = k instanceof Num ? NUM
+                             : k instanceof String ? STR : ANY;
+                else if (kinds[j] == NUM && !(k instanceof Num) ||
+                         kinds[j] == STR && !(k instanceof String))
+                    kinds[j] = ANY;
+            }
+            a[i] = e;
+        }
+        if (a.length > 1)
+            MList.sort(a, (Object[]) a.clone(), 0, a.length, this);
+        for (int i = 0; i < a.length; ++i)
+            a[i] = ((Object[]) a[i])[0];
+        return a.length == 0 ? null : new MList(a);
+    }
+
+    /** Stable sort on the values of key function. */
+    public static AList sort(AList l, Fun key, boolean descending) {
+        return new KeySort(new int[1], new boolean[] { descending })
+                    .sort(elements(l), new Fun[] { key });
+    }
+
+    /**
+     * Stable sort on multiple keys, given as list of Number, NumberDesc,
+     * String or StringDesc tags containing the key functions.
+     */
+    public static AList sort(AList l, AList keys) {
+        int n = keys == null ? 0 : (int) keys.length();
+        Fun[] f = new Fun[n];
+        int[] kinds = new int[n];
+        boolean[] desc = new boolean[n];
+        for (int i = 0; keys != null; keys = keys.rest(), ++i) {
+            Tag t = (Tag) keys.first();
+            f[i] = (Fun) t.value;
+            kinds[i] = t.name.startsWith("Number") ? NUM : STR;
+            desc[i] = t.name.endsWith("Desc");
+        }
+        return new KeySort(kinds, desc).sort(elements(l), f);
+    }
+}
@@ -84,14 +84,7 @@ public class LList extends AList implements Serializable {
     }
 
     public String toString() {
-        StringBuffer buf = new StringBuffer("[");
-        buf.append(Core.show(first()));
-        for (AIter i = rest(); i != null; i = i.next()) {
-            buf.append(',');
-            buf.append(Core.show(i.first()));
-        }
-        buf.append(']');
-        return buf.toString();
+        return Show.toString(this);
     }
 
     public int compareTo(Object obj) {
@@ -108,11 +101,7 @@ public class LList extends AList implements Serializable {
     }
 
     public AList reverse() {
-        AList l = null;
-        for (AIter i = this; i != null; i = i.next()) {
-            l = new LList(i.first(), l);
-        }
-        return l;
+        return ChunkList.reverse(this);
     }
 
     public Num index(Object v) {
@@ -120,7 +109,7 @@ public class LList extends AList implements Serializable {
         if (v == null) {
             for (AIter i = this; i != null; i = i.next()) {
                 if (i.first() == null) {
-                    return new IntNum(n);
+                    return IntNum.valueOf(n);
                 }
                 ++n;
             }
@@ -128,7 +117,7 @@ public class LList extends AList implements Serializable {
         }
         for (AIter i = this; i != null; i = i.next()) {
             if (v.equals(i.first())) {
-                return new IntNum(n);
+                return IntNum.valueOf(n);
             }
             ++n;
         }
@@ -33,33 +33,28 @@ package yeti.lang;
 /** Yeti core library - Lazy list. */
 public final class LazyList extends LList {
     private Fun promise;
-    private boolean forced;
+    // forced lists are read without locking
+    private volatile boolean forced;
 
     public LazyList(Object first, Fun rest) {
         super(first, null);
         promise = rest;
     }
 
-    public synchronized AList rest() {
+    public AList rest() {
         if (!forced) {
-            rest = (AList) promise.apply(null);
-            forced = true;
+            synchronized (this) {
+                if (!forced) {
+                    rest = (AList) promise.apply(null);
+                    promise = null;
+                    forced = true;
+                }
+            }
         }
         return rest;
     }
 
     public String toString() {
-        StringBuffer buf = new StringBuffer("[");
-        buf.append(Core.show(first()));
-        AIter i = rest();
-        for (int n = 0; i != null && ++n <= 100; i = i.next()) {
-            buf.append(',');
-            buf.append(Core.show(i.first()));
-        }
-        if (i != null) {
-            buf.append("...");
-        }
-        buf.append(']');
-        return buf.toString();
+        return Show.toString(this);
     }
 }
@@ -119,26 +119,7 @@ public final class ListRange extends AList implements Serializable {
     }
 
     public String toString() {
-        StringBuffer buf = new StringBuffer("[");
-        boolean f = true;
-        for (Num i = first; i.compareTo(last) * inc <= 0; i = i.add(inc)) {
-            if (f) {
-                f = false;
-            } else {
-                buf.append(',');
-            }
-            buf.append(i);
-        }
-        for (AIter i = rest; i != null; i = i.next()) {
-            if (f) {
-                f = false;
-            } else {
-                buf.append(',');
-            }
-            buf.append(Core.show(i.first()));
-        }
-        buf.append(']');
-        return buf.toString();
+        return Show.toString(this);
     }
 
     public int compareTo(Object obj) {
@@ -161,7 +142,7 @@ public final class ListRange extends AList implements Serializable {
             if (first.compareTo(last) <= 0) {
                 for (int i = first.intValue(), e = last.intValue();
                      i <= e; ++i) {
-                    f.apply(new IntNum(i));
+                    f.applyL(i);
                 }
             }
         } else if (first.rCompare(Integer.MAX_VALUE) > 0 &&
@@ -169,7 +150,7 @@ public final class ListRange extends AList implements Serializable {
             if (first.compareTo(last) >= 0) {
                 for (int i = first.intValue(), e = last.intValue();
                      i >= e; --i) {
-                    f.apply(new IntNum(i));
+                    f.applyL(i);
                 }
             }
         } else {
@@ -188,7 +169,7 @@ public final class ListRange extends AList implements Serializable {
             if (first.compareTo(last) <= 0) {
                 for (int i = first.intValue(), e = last.intValue();
                      i <= e; ++i) {
-                    v = f.apply(v, new IntNum(i));
+                    v = f.apply(v, IntNum.valueOf(i));
                 }
             }
         } else if (first.rCompare(Integer.MAX_VALUE) > 0 &&
@@ -196,7 +177,7 @@ public final class ListRange extends AList implements Serializable {
             if (first.compareTo(last) >= 0) {
                 for (int i = first.intValue(), e = last.intValue();
                      i >= e; --i) {
-                    v = f.apply(v, new IntNum(i));
+                    v = f.apply(v, IntNum.valueOf(i));
                 }
             }
         } else {
@@ -244,7 +225,7 @@ public final class ListRange extends AList implements Serializable {
             l = new MList();
             l.reserve(e - i + 1);
             while (i <= e) {
-                l.add(f.apply(new IntNum(i++)));
+                l.add(f.applyL(i++));
             }
         } else if (first.rCompare(Integer.MAX_VALUE) > 0 &&
                    last.rCompare(Integer.MIN_VALUE) < 0) {
@@ -254,10 +235,10 @@ public final class ListRange extends AList implements Serializable {
             l = new MList();
             l.reserve(i - e + 1);
             while (i >= e) {
-                l.add(f.apply(new IntNum(i--)));
+                l.add(f.applyL(i--));
             }
         } else {
-            return new MapList(this, f);
+            return Pipeline.map(this, f);
         }
         for (AIter i = rest; i != null; i = i.next()) {
             l.add(f.apply(i.first()));
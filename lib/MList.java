@@ -97,16 +97,7 @@ abstract class AMList extends AList implements Serializable {
     }
 
     public String toString() {
-        Object[] array = array();
-        StringBuffer buf = new StringBuffer("[");
-        for (int cnt = _size(), i = start; i < cnt; ++i) {
-            if (i > start) {
-                buf.append(',');
-            }
-            buf.append(Core.show(array[i]));
-        }
-        buf.append(']');
-        return buf.toString();
+        return Show.toString(this);
     }
 
     public void forEach(Object fun) {
@@ -131,14 +122,14 @@ abstract class AMList extends AList implements Serializable {
         if (v == null) {
             for (int i = start; i < cnt; ++i) {
                 if (array[i] == null) {
-                    return new IntNum(i - start);
+                    return IntNum.valueOf(i - start);
                 }
             }
             return null;
         }
         for (int i = start; i < cnt; ++i) {
             if (v.equals(array[i])) {
-                return new IntNum(i - start);
+                return IntNum.valueOf(i - start);
             }
         }
         return null;
@@ -218,7 +209,7 @@ abstract class AMList extends AList implements Serializable {
 public class MList extends AMList implements ByKey {
     private static final Object[] EMPTY = {}; 
     private Object[] array;
-    private int size;
+    int size;
 
     private class SubList extends AMList {
         Object first;
@@ -309,7 +300,7 @@ public class MList extends AMList implements ByKey {
         }
     }
 
-    public final void reserve(int n) {
+    public void reserve(int n) {
         if (n > array.length) {
             Object[] tmp = new Object[n];
             System.arraycopy(array, 0, tmp, 0, size);
@@ -317,7 +308,7 @@ public class MList extends AMList implements ByKey {
         }
     }
 
-    public final void add(Object o) {
+    public void add(Object o) {
         if (size >= array.length) {
             Object[] tmp = new Object[size == 0 ? 10 : size * 3 / 2 + 1];
             System.arraycopy(array, 0, tmp, 0, array.length);
@@ -326,33 +317,33 @@ public class MList extends AMList implements ByKey {
         array[size++] = o;
     }
 
-    public final Object shift() {
+    public Object shift() {
         if (start >= size) {
             throw new EmptyArrayException("No first element in empty array");
         }
         return array[start++];
     }
 
-    public final Object pop() {
+    public Object pop() {
         if (start >= size) {
             throw new EmptyArrayException("Cannot pop from an empty array");
         }
         return array[--size];
     }
 
-    public final Object first() {
+    public Object first() {
         if (start >= size) {
             throw new EmptyArrayException("No first element in empty array");
         }
         return array[start];
     }
 
-    public final AList rest() {
+    public AList rest() {
         int p;
         return (p = start + 1) < size ? new SubList(p) : null;
     }
 
-    public final AIter next() {
+    public AIter next() {
         int p;
         return (p = start + 1) < size ? new Iter(p) : null;
     }
@@ -362,7 +353,7 @@ public class MList extends AMList implements ByKey {
         return  (i = ((Number) index).intValue()) >= 0 && i + start < size;
     }
 
-    public final Object vget(Object index) {
+    public Object vget(Object index) {
         int i;
         if ((i = ((Number) index).intValue()) < 0) {
             throw new NoSuchKeyException(i, size - start);
@@ -373,7 +364,7 @@ public class MList extends AMList implements ByKey {
         return array[i];
     }
 
-    public final Object put(Object index, Object value) {
+    public Object put(Object index, Object value) {
         int i;
         if ((i = ((Number) index).intValue()) < 0) {
             throw new NoSuchKeyException(i, size - start);
@@ -394,11 +385,16 @@ public class MList extends AMList implements ByKey {
             throw new NoSuchKeyException(i - start, size - start);
         }
         if ((n = --size - i) > 0) {
-            System.arraycopy(array, i + 1, array, i, n);
+            move(i + 1, i, n);
         }
         return null;
     }
 
+    // shifts elements inside the array on removal
+    void move(int from, int to, int n) {
+        System.arraycopy(array, from, array, to, n);
+    }
+
     private void removeRange(ListRange range) {
         int from = range.first.intValue(),
             to = range.last.intValue();
@@ -414,8 +410,7 @@ public class MList extends AMList implements ByKey {
             if (to < 0 || to >= n)
                 throw new NoSuchKeyException(to, n);
             if (++to < n)
-                System.arraycopy(array, to + start,
-                                 array, from + start, n - to);
+                move(to + start, from + start, n - to);
             size -= to - from;
         }
     }
@@ -486,17 +481,17 @@ public class MList extends AMList implements ByKey {
         return size;
     }
 
-    final Object[] array() {
+    Object[] array() {
         return array;
     }
 
-    final MList asort() {
+    MList asort() {
         Arrays.sort(array, start, size);
         return this;
     }
 
     // java sort don't know wtf the Fun is
-    private static void sort(Object[] a, Object[] tmp,
+    static void sort(Object[] a, Object[] tmp,
                              int from, int to, Fun isLess) {
         int split = (from + to) / 2;
         if (split - from > 1)
@@ -526,6 +521,14 @@ public class MList extends AMList implements ByKey {
         return this;
     }
 
+    /**
+     * Moves k least elements (by isLess, or natural order when null)
+     * into sorted order at the start of this array.
+     */
+    public void partialSort(int k, Fun isLess) {
+        TopK.partialSort(array, start, size, k, isLess);
+    }
+
     public void setDefault(Fun fun) {
         throw new UnsupportedOperationException();
     }
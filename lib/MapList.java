@@ -30,7 +30,10 @@
  */
 package yeti.lang;
 
-/** Yeti core library - Map list. */
+/**
+ * Yeti core library - Map list.
+ * @deprecated Pipeline is used instead, kept for compiled code using it.
+ */
 final class MapList extends LList {
     private boolean mappedRest;
     private AIter src;
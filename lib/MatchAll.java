@@ -39,7 +39,7 @@ final class MatchAllFun extends Fun {
     Fun skipFun;
 
     final class Match extends LList {
-        private boolean forced;
+        private volatile boolean forced;
         int last;
         String str;
         Matcher m;
@@ -48,10 +48,16 @@ final class MatchAllFun extends Fun {
             super(v, null);
         }
 
-        public synchronized AList rest() {
+        public AList rest() {
             if (!forced) {
-                rest = get(str, m, last);
-                forced = true;
+                synchronized (this) {
+                    if (!forced) {
+                        rest = get(str, m, last);
+                        str = null;
+                        m = null;
+                        forced = true;
+                    }
+                }
             }
             return rest;
         }
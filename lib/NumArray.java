@@ -0,0 +1,590 @@
+// ex: se sts=4 sw=4 expandtab:
+
+/**
+ * Yeti core library - numeric arrays.
+ *
+ * Copyright (c) 2010 Madis Janson
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package yeti.lang;
+
+import java.util.Arrays;
+
+/**
+ * Array of numbers stored in a primitive array.
+ * Elements are boxed only when read as objects, arithmetic helpers
+ * like sum and sort work directly on the primitive values.
+ */
+public abstract class NumArray extends MList {
+    // absolute index i
+    abstract Num num(int i);
+
+    abstract void set(int i, Num value);
+
+    // element i hash, equality and comparison with the value,
+    // same as by num(i), but without boxing the element
+    abstract int hash(int i);
+
+    abstract boolean eq(int i, Object v);
+
+    abstract int compare(int i, Object v);
+
+    // applies f to element i, unboxed when f supports it
+    abstract Object apply(Fun f, int i);
+
+    abstract int capacity();
+
+    abstract void resize(int n);
+
+    abstract NumArray slice(int from, int to);
+
+    abstract void sortRange();
+
+    abstract void reverseRange();
+
+    public abstract Num sum();
+
+    public static NumArray longs(AIter iter) {
+        NumArray a = new LongArray();
+        for (; iter != null; iter = iter.next())
+            a.add(iter.first());
+        return a;
+    }
+
+    public static NumArray doubles(AIter iter) {
+        NumArray a = new DoubleArray();
+        for (; iter != null; iter = iter.next())
+            a.add(iter.first());
+        return a;
+    }
+
+    private class View extends AMList {
+        private boolean iter;
+
+        View(int start) {
+            this.start = start;
+        }
+
+        public Object first() {
+            if (start >= size) {
+                throw new IllegalStateException(
+                    "End of list reached or list has shrunken.");
+            }
+            return num(start);
+        }
+
+        public AList rest() {
+            int p;
+            return (p = start + 1) < size ? new View(p) : null;
+        }
+
+        public AIter next() {
+            if (!iter) {
+                View rest = (View) rest();
+                if (rest != null)
+                    rest.iter = true;
+                return rest;
+            }
+            return ++start < size ? this : null;
+        }
+
+        public boolean isEmpty() {
+            return start >= size;
+        }
+
+        int _size() {
+            return size;
+        }
+
+        Object[] array() {
+            return NumArray.this.array();
+        }
+
+        public Object copy() {
+            return slice(start < size ? start : size, size);
+        }
+
+        public int hashCode() {
+            return hash(start, size);
+        }
+
+        public boolean equals(Object obj) {
+            return NumArray.this.equals(start, obj);
+        }
+
+        public void forEach(Object fun) {
+            NumArray.this.forEach(start, (Fun) fun);
+        }
+
+        public Object fold(Fun f, Object v) {
+            return NumArray.this.fold(start, f, v);
+        }
+
+        public Num index(Object v) {
+            return NumArray.this.index(start, v);
+        }
+
+        public AList map(Fun f) {
+            return NumArray.this.map(start, f);
+        }
+
+        public int compareTo(Object other) {
+            return NumArray.this.compareTo(start, other);
+        }
+
+        public AList reverse() {
+            return NumArray.this.reverse(start);
+        }
+
+        public AList sort() {
+            return NumArray.this.sort(start);
+        }
+
+        public AList sort(Fun isLess) {
+            return NumArray.this.sort(start, isLess);
+        }
+
+        public AList find(Fun pred) {
+            return NumArray.this.find(start, pred);
+        }
+    }
+
+    public void reserve(int n) {
+        if (n > capacity())
+            resize(n);
+    }
+
+    public void add(Object o) {
+        if (size >= capacity())
+            resize(size == 0 ? 10 : size * 3 / 2 + 1);
+        set(size, (Num) o);
+        ++size;
+    }
+
+    public Object shift() {
+        if (start >= size) {
+            throw new EmptyArrayException("No first element in empty array");
+        }
+        return num(start++);
+    }
+
+    public Object pop() {
+        if (start >= size) {
+            throw new EmptyArrayException("Cannot pop from an empty array");
+        }
+        return num(--size);
+    }
+
+    public Object first() {
+        if (start >= size) {
+            throw new EmptyArrayException("No first element in empty array");
+        }
+        return num(start);
+    }
+
+    public AList rest() {
+        int p;
+        return (p = start + 1) < size ? new View(p) : null;
+    }
+
+    public AIter next() {
+        View rest = (View) rest();
+        if (rest != null)
+            rest.iter = true;
+        return rest;
+    }
+
+    public Object vget(Object index) {
+        int i;
+        if ((i = ((Number) index).intValue()) < 0) {
+            throw new NoSuchKeyException(i, size - start);
+        }
+        if ((i += start) >= size) {
+            throw new NoSuchKeyException(i - start, size - start);
+        }
+        return num(i);
+    }
+
+    public Object put(Object index, Object value) {
+        int i;
+        if ((i = ((Number) index).intValue()) < 0) {
+            throw new NoSuchKeyException(i, size - start);
+        }
+        if ((i += start) >= size) {
+            throw new NoSuchKeyException(i - start, size - start);
+        }
+        set(i, (Num) value);
+        return null;
+    }
+
+    protected MList copy(int from, int to) {
+        int n = size - start;
+        if (from < 0 || from > n)
+            throw new NoSuchKeyException(from, n);
+        if (to > n)
+            throw new NoSuchKeyException("Copy range " + from + " to " + to +
+                                         " exceeds array length " + n);
+        return slice(start + from, from >= to ? start + from : start + to);
+    }
+
+    public Object copy() {
+        return slice(start, size);
+    }
+
+    // Boxed copy, only for code working on any array (like Parallel
+    // or KeySort). From 0, as views taken before shift have smaller start.
+    Object[] array() {
+        Object[] a = new Object[size];
+        for (int i = 0; i < size; ++i)
+            a[i] = num(i);
+        return a;
+    }
+
+    // The list operations below are done from the given start index,
+    // for both the array and its views.
+
+    int hash(int from, int to) {
+        int h = 1;
+        for (int i = from; i < to; ++i)
+            h = 31 * h + hash(i);
+        return h;
+    }
+
+    boolean equals(int from, Object obj) {
+        if (obj == null)
+            return size <= from;
+        if (!(obj instanceof AList))
+            return false;
+        AIter j = ((AList) obj).isEmpty() ? null : (AList) obj;
+        for (int i = from; i < size; ++i) {
+            if (j == null || !eq(i, j.first()))
+                return false;
+            j = j.next();
+        }
+        return j == null;
+    }
+
+    void forEach(int from, Fun f) {
+        for (int i = from; i < size; ++i)
+            apply(f, i);
+    }
+
+    Object fold(int from, Fun f, Object v) {
+        for (int i = from; i < size; ++i)
+            v = f.apply(v, num(i));
+        return v;
+    }
+
+    Num index(int from, Object v) {
+        for (int i = from; i < size; ++i)
+            if (eq(i, v))
+                return IntNum.valueOf(i - from);
+        return null;
+    }
+
+    AList map(int from, Fun f) {
+        if (from >= size)
+            return null;
+        Object[] r = new Object[size - from];
+        for (int i = from; i < size; ++i)
+            r[i - from] = apply(f, i);
+        return new MList(r);
+    }
+
+    int compareTo(int from, Object other) {
+        AIter j = ((AList) other).isEmpty() ? null : (AList) other;
+        int i = from;
+        for (; i < size && j != null; ++i, j = j.next()) {
+            Object b = j.first();
+            int r;
+            if (b == null)
+                return 1;
+            if ((r = compare(i, b)) != 0)
+                return r;
+        }
+        return i < size ? 1 : j != null ? -1 : 0;
+    }
+
+    AList reverse(int from) {
+        if (from >= size)
+            return null;
+        NumArray a = slice(from, size);
+        a.reverseRange();
+        return a;
+    }
+
+    AList sort(int from) {
+        if (from >= size)
+            return null;
+        NumArray a = slice(from, size);
+        a.sortRange();
+        return a;
+    }
+
+    AList sort(int from, Fun isLess) {
+        if (from >= size)
+            return null;
+        return slice(from, size).asort(isLess);
+    }
+
+    AList find(int from, Fun pred) {
+        for (int i = from; i < size; ++i)
+            if (pred.apply(num(i)) == Boolean.TRUE)
+                return new View(i);
+        return null;
+    }
+
+    public int hashCode() {
+        return hash(start, size);
+    }
+
+    public boolean equals(Object obj) {
+        return equals(start, obj);
+    }
+
+    public void forEach(Object fun) {
+        forEach(start, (Fun) fun);
+    }
+
+    public Object fold(Fun f, Object v) {
+        return fold(start, f, v);
+    }
+
+    public Num index(Object v) {
+        return index(start, v);
+    }
+
+    public AList map(Fun f) {
+        return map(start, f);
+    }
+
+    public AList smap(Fun f) {
+        return map(start, f);
+    }
+
+    public int compareTo(Object other) {
+        return compareTo(start, other);
+    }
+
+    public AList reverse() {
+        return reverse(start);
+    }
+
+    public void partialSort(int k, Fun isLess) {
+        if (isLess == null) {
+            sortRange();
+            return;
+        }
+        Object[] a = array();
+        TopK.partialSort(a, start, size, k, isLess);
+        for (int i = start; i < size; ++i)
+            set(i, (Num) a[i]);
+    }
+
+    public AList sort() {
+        return sort(start);
+    }
+
+    public AList sort(Fun isLess) {
+        return sort(start, isLess);
+    }
+
+    public AList find(Fun pred) {
+        return find(start, pred);
+    }
+
+    MList asort() {
+        sortRange();
+        return this;
+    }
+
+    MList asort(Fun isLess) {
+        int n = size - start;
+        if (n > 1) {
+            Object[] a = new Object[n], tmp = new Object[n];
+            for (int i = 0; i < n; ++i)
+                tmp[i] = a[i] = num(start + i);
+            sort(a, tmp, 0, n, isLess);
+            for (int i = 0; i < n; ++i)
+                set(start + i, (Num) a[i]);
+        }
+        return this;
+    }
+}
+
+final class LongArray extends NumArray {
+    private static final long[] EMPTY = {};
+    private long[] array = EMPTY;
+
+    Num num(int i) {
+        return IntNum.valueOf(array[i]);
+    }
+
+    void set(int i, Num value) {
+        long v = value.longValue();
+        if (!(value instanceof IntNum) &&
+            !(value instanceof BigNum && value.rCompare(v) == 0))
+            throw new IllegalArgumentException(
+                        "Not a 64-bit integer (" + value + ")");
+        array[i] = v;
+    }
+
+    int hash(int i) {
+        long v = array[i];
+        return (int) (v ^ (v >>> 32));
+    }
+
+    boolean eq(int i, Object v) {
+        return v instanceof Num && ((Num) v).rCompare(array[i]) == 0;
+    }
+
+    int compare(int i, Object v) {
+        return ((Num) v).rCompare(array[i]);
+    }
+
+    Object apply(Fun f, int i) {
+        return f.applyL(array[i]);
+    }
+
+    int capacity() {
+        return array.length;
+    }
+
+    void resize(int n) {
+        long[] tmp = new long[n];
+        System.arraycopy(array, 0, tmp, 0, size);
+        array = tmp;
+    }
+
+    void move(int from, int to, int n) {
+        System.arraycopy(array, from, array, to, n);
+    }
+
+    NumArray slice(int from, int to) {
+        LongArray r = new LongArray();
+        r.resize(to - from);
+        System.arraycopy(array, from, r.array, 0, to - from);
+        r.size = to - from;
+        return r;
+    }
+
+    void sortRange() {
+        Arrays.sort(array, start, size);
+    }
+
+    void reverseRange() {
+        for (int i = start, j = size - 1; i < j; ++i, --j) {
+            long t = array[i];
+            array[i] = array[j];
+            array[j] = t;
+        }
+    }
+
+    public Num sum() {
+        long sum = 0;
+        for (int i = start; i < size; ++i) {
+            long v = array[i], r = sum + v;
+            if (((sum ^ r) & (v ^ r)) < 0) {
+                Num big = new BigNum(sum);
+                while (i < size)
+                    big = big.add(array[i++]);
+                return big;
+            }
+            sum = r;
+        }
+        return IntNum.valueOf(sum);
+    }
+}
+
+final class DoubleArray extends NumArray {
+    private static final double[] EMPTY = {};
+    private double[] array = EMPTY;
+
+    Num num(int i) {
+        return new FloatNum(array[i]);
+    }
+
+    void set(int i, Num value) {
+        array[i] = value.doubleValue();
+    }
+
+    int hash(int i) {
+        return FloatNum.hashCode(array[i]);
+    }
+
+    boolean eq(int i, Object v) {
+        return v instanceof Num && array[i] == ((Num) v).doubleValue();
+    }
+
+    int compare(int i, Object v) {
+        double a = array[i], b = ((Number) v).doubleValue();
+        return a < b ? -1 : a > b ? 1 : 0;
+    }
+
+    Object apply(Fun f, int i) {
+        return f.applyD(array[i]);
+    }
+
+    int capacity() {
+        return array.length;
+    }
+
+    void resize(int n) {
+        double[] tmp = new double[n];
+        System.arraycopy(array, 0, tmp, 0, size);
+        array = tmp;
+    }
+
+    void move(int from, int to, int n) {
+        System.arraycopy(array, from, array, to, n);
+    }
+
+    NumArray slice(int from, int to) {
+        DoubleArray r = new DoubleArray();
+        r.resize(to - from);
+        System.arraycopy(array, from, r.array, 0, to - from);
+        r.size = to - from;
+        return r;
+    }
+
+    void sortRange() {
+        Arrays.sort(array, start, size);
+    }
+
+    void reverseRange() {
+        for (int i = start, j = size - 1; i < j; ++i, --j) {
+            double t = array[i];
+            array[i] = array[j];
+            array[j] = t;
+        }
+    }
+
+    public Num sum() {
+        double sum = 0;
+        for (int i = start; i < size; ++i)
+            sum += array[i];
+        return new FloatNum(sum);
+    }
+}
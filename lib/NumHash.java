@@ -0,0 +1,317 @@
+// ex: se sts=4 sw=4 expandtab:
+
+/**
+ * Yeti core library - hash with number keys.
+ *
+ * Copyright (c) 2010 Madis Janson
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package yeti.lang;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Hash for number keys. Integer keys (including equal floats) are stored
+ * as raw longs in open addressing table, other keys go into normal Hash.
+ * Integer keys given as other than IntNum (like 2.0) are remembered,
+ * so the keys are seen as they were put in.
+ */
+public final class NumHash extends OpenHash {
+    // null values are stored as NULL, so that null marks empty slot
+    private static final Object NULL = new Object();
+    private transient long[] keys;
+    private transient Object[] vals;
+    // original keys that aren't IntNum, null when there are none
+    private transient Object[] origs;
+    private transient int size;
+    private transient Hash other;
+    private transient int shift;
+
+    public NumHash() {
+        this(0);
+    }
+
+    public NumHash(int initialCapacity) {
+        init(initialCapacity);
+    }
+
+    void init(int initialCapacity) {
+        int cap = capacity(initialCapacity);
+        shift = 64 - bits(cap);
+        keys = new long[cap];
+        vals = new Object[cap];
+        origs = null;
+        size = 0;
+        other = null;
+    }
+
+    // fibonacci hashing, the top bits of product select the slot
+    private int slot(long key) {
+        return (int) (key * 0x9e3779b97f4a7c15L >>> shift);
+    }
+
+    // whether the key is stored as long
+    private static boolean isLong(Object key) {
+        if (key instanceof IntNum)
+            return true;
+        if (key instanceof FloatNum) {
+            double v = ((FloatNum) key).doubleValue();
+            return v == (long) v;
+        }
+        // rational and big numbers are rare as keys
+        return key instanceof Num && key.equals(
+                    IntNum.valueOf(((Num) key).longValue()));
+    }
+
+    private int find(long key) {
+        Object[] vals = this.vals;
+        int mask = vals.length - 1;
+        for (int i = slot(key); vals[i] != null; i = i + 1 & mask)
+            if (keys[i] == key)
+                return i;
+        return -1;
+    }
+
+    Object lookup(Object key) {
+        if (isLong(key)) {
+            int i = find(((Num) key).longValue());
+            return i < 0 ? NONE : vals[i] == NULL ? null : vals[i];
+        }
+        if (other == null || !other.containsKey(key))
+            return NONE;
+        return other.get(key);
+    }
+
+    private void resize(int cap) {
+        long[] oldKeys = keys;
+        Object[] oldVals = vals;
+        Object[] oldOrigs = origs;
+        shift = 64 - bits(cap);
+        keys = new long[cap];
+        vals = new Object[cap];
+        if (oldOrigs != null)
+            origs = new Object[cap];
+        int mask = cap - 1;
+        for (int i = 0; i < oldVals.length; ++i) {
+            if (oldVals[i] != null) {
+                int j = slot(oldKeys[i]);
+                while (vals[j] != null)
+                    j = j + 1 & mask;
+                keys[j] = oldKeys[i];
+                vals[j] = oldVals[i];
+                if (oldOrigs != null)
+                    origs[j] = oldOrigs[i];
+            }
+        }
+    }
+
+    public Object put(Object key, Object value) {
+        if (!isLong(key)) {
+            if (other == null)
+                other = new Hash();
+            return other.put(key, value);
+        }
+        long k = ((Num) key).longValue();
+        if (value == null)
+            value = NULL;
+        int mask = vals.length - 1, i = slot(k);
+        for (Object v; (v = vals[i]) != null; i = i + 1 & mask) {
+            if (keys[i] == k) {
+                vals[i] = value;
+                return v == NULL ? null : v;
+            }
+        }
+        keys[i] = k;
+        vals[i] = value;
+        if (!(key instanceof IntNum)) {
+            if (origs == null)
+                origs = new Object[vals.length];
+            origs[i] = key;
+        }
+        if (++size > vals.length - (vals.length >>> 2))
+            resize(vals.length << 1);
+        return null;
+    }
+
+    public Object remove(Object key) {
+        if (!isLong(key))
+            return other == null ? null : other.remove(key);
+        int i = find(((Num) key).longValue());
+        if (i < 0)
+            return null;
+        Object old = vals[i];
+        long[] keys = this.keys;
+        Object[] vals = this.vals;
+        Object[] origs = this.origs;
+        int mask = vals.length - 1;
+        // backward shift the following entries that probed over the slot
+        for (int j = i + 1 & mask; vals[j] != null; j = j + 1 & mask) {
+            int s = slot(keys[j]);
+            if (i <= j ? i < s && s <= j : i < s || s <= j)
+                continue;
+            keys[i] = keys[j];
+            vals[i] = vals[j];
+            if (origs != null)
+                origs[i] = origs[j];
+            i = j;
+        }
+        vals[i] = null;
+        if (origs != null)
+            origs[i] = null;
+        --size;
+        return old == NULL ? null : old;
+    }
+
+    public void clear() {
+        init(0);
+    }
+
+    public int size() {
+        return other == null ? size : size + other.size();
+    }
+
+    public Object copy() {
+        NumHash result = new NumHash();
+        result.keys = (long[]) keys.clone();
+        result.vals = (Object[]) vals.clone();
+        if (origs != null)
+            result.origs = (Object[]) origs.clone();
+        result.size = size;
+        result.shift = shift;
+        if (other != null)
+            result.other = (Hash) other.copy();
+        result.defaultFun = defaultFun;
+        return result;
+    }
+
+    private final class Entry implements Map.Entry {
+        private final Object key;
+        private Object value;
+
+        Entry(Object key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public Object getKey() {
+            return key;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        public Object setValue(Object value) {
+            Object old = this.value;
+            put(key, this.value = value);
+            return old;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry e = (Map.Entry) o;
+            Object v = e.getValue();
+            return key.equals(e.getKey()) &&
+                   (value == null ? v == null : value.equals(v));
+        }
+
+        public int hashCode() {
+            return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+    }
+
+    private final class Iter implements Iterator {
+        private long[] keys = NumHash.this.keys;
+        private Object[] vals = NumHash.this.vals;
+        private Object[] origs = NumHash.this.origs;
+        private boolean copied;
+        private int pos;
+        private Iterator rest;
+        private boolean inRest;
+        private Object last = NONE;
+
+        public boolean hasNext() {
+            while (pos < vals.length && vals[pos] == null)
+                ++pos;
+            if (pos < vals.length)
+                return true;
+            if (rest == null && other != null)
+                rest = other.entrySet().iterator();
+            return rest != null && rest.hasNext();
+        }
+
+        public Object next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            if (pos >= vals.length) {
+                Map.Entry e = (Map.Entry) rest.next();
+                inRest = true;
+                last = e.getKey();
+                return e;
+            }
+            Object v = vals[pos];
+            last = origs != null && origs[pos] != null
+                    ? origs[pos] : IntNum.valueOf(keys[pos]);
+            ++pos;
+            return new Entry(last, v == NULL ? null : v);
+        }
+
+        public void remove() {
+            if (last == NONE)
+                throw new IllegalStateException();
+            if (inRest) {
+                rest.remove();
+            } else {
+                // removal moves entries around, so continue on a copy
+                if (!copied) {
+                    keys = (long[]) keys.clone();
+                    vals = (Object[]) vals.clone();
+                    if (origs != null)
+                        origs = (Object[]) origs.clone();
+                    copied = true;
+                }
+                NumHash.this.remove(last);
+            }
+            last = NONE;
+        }
+    }
+
+    public Set entrySet() {
+        return new AbstractSet() {
+            public Iterator iterator() {
+                return new Iter();
+            }
+
+            public int size() {
+                return NumHash.this.size();
+            }
+        };
+    }
+}
@@ -0,0 +1,134 @@
+// ex: se sts=4 sw=4 expandtab:
+
+/**
+ * Yeti core library - open addressing hash.
+ *
+ * Copyright (c) 2010 Madis Janson
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package yeti.lang;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Common part of the open addressing hashes (NumHash and StrHash).
+ * Keys and values are kept in flat arrays with linear probing,
+ * so there are no entry objects. The tables are serialized as
+ * key-value pairs, like java.util.HashMap does.
+ */
+abstract class OpenHash extends AbstractMap
+        implements ByKey, Coll, Serializable {
+    static final Object NONE = new Object();
+    Fun defaultFun;
+
+    // value for key or NONE
+    abstract Object lookup(Object key);
+
+    // empty tables for given number of entries
+    abstract void init(int initialCapacity);
+
+    static int capacity(int n) {
+        int cap = 8;
+        // load factor 0.75
+        while (cap - (cap >>> 2) < n)
+            cap <<= 1;
+        return cap;
+    }
+
+    // log2 of the power of two
+    static int bits(int cap) {
+        int n = 0;
+        while ((cap >>>= 1) != 0)
+            ++n;
+        return n;
+    }
+
+    public Object get(Object key) {
+        Object x = lookup(key);
+        return x == NONE ? null : x;
+    }
+
+    public boolean containsKey(Object key) {
+        return lookup(key) != NONE;
+    }
+
+    public Object vget(Object key) {
+        Object x;
+        if ((x = lookup(key)) == NONE) {
+            if (defaultFun != null) {
+                return defaultFun.apply(key);
+            }
+            throw new NoSuchKeyException("Key not found (" + key + ")");
+        }
+        return x;
+    }
+
+    public void removeAll(AList keys) {
+        if (keys != null && !keys.isEmpty())
+            for (AIter i = keys; i != null; i = i.next())
+                remove(i.first());
+    }
+
+    public long length() {
+        return size();
+    }
+
+    public AList asList() {
+        return new MList(values().toArray());
+    }
+
+    public void setDefault(Fun fun) {
+        defaultFun = fun;
+    }
+
+    public String toString() {
+        return Show.toString(this);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size());
+        for (Iterator i = entrySet().iterator(); i.hasNext();) {
+            Map.Entry e = (Map.Entry) i.next();
+            out.writeObject(e.getKey());
+            out.writeObject(e.getValue());
+        }
+    }
+
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int n = in.readInt();
+        init(n);
+        while (--n >= 0)
+            put(in.readObject(), in.readObject());
+    }
+}
@@ -46,7 +46,7 @@ public class PArray extends LList {
     }
 
     public Object first() {
-        return new IntNum(Array.getLong(array, start));
+        return IntNum.valueOf(Array.getLong(array, start));
     }
 
     public AIter next() {
@@ -0,0 +1,386 @@
+// ex: se sts=4 sw=4 expandtab:
+
+/**
+ * Yeti core library - parallel list operations.
+ *
+ * Copyright (c) 2010 Madis Janson
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package yeti.lang;
+
+import java.util.Arrays;
+
+// Forks the top levels of the merge sort recursion to separate threads.
+// The splits and merges are same as in the sequential sort, so the result
+// is identical to it (including order of equal elements).
+final class MergeSort extends Thread {
+    private final Object[] a;
+    private final Object[] tmp;
+    private final int from;
+    private final int to;
+    private final Fun isLess;
+    private final int depth;
+    Throwable error;
+
+    MergeSort(Object[] a, Object[] tmp, int from, int to,
+              Fun isLess, int depth) {
+        this.a = a;
+        this.tmp = tmp;
+        this.from = from;
+        this.to = to;
+        this.isLess = isLess;
+        this.depth = depth;
+    }
+
+    public void run() {
+        try {
+            sort();
+        } catch (Throwable ex) {
+            error = ex;
+        }
+    }
+
+    // sorts the range into a, tmp must have the same elements initially
+    private void sort() {
+        if (depth <= 0 || to - from < Parallel.threshold * 2) {
+            if (isLess == null)
+                Arrays.sort(a, from, to);
+            else
+                MList.sort(a, tmp, from, to, isLess);
+            return;
+        }
+        int split = (from + to) >>> 1;
+        MergeSort left = new MergeSort(tmp, a, from, split, isLess, depth - 1);
+        MergeSort right = new MergeSort(tmp, a, split, to, isLess, depth - 1);
+        left.setDaemon(true);
+        left.start();
+        right.run();
+        Parallel.await(left);
+        Parallel.rethrow(left.error);
+        Parallel.rethrow(right.error);
+        Object[] a = this.a, tmp = this.tmp;
+        int i = from, j = split, k = from;
+        if (isLess == null) {
+            while (i < split && j < to)
+                a[k++] = ((Comparable) tmp[j]).compareTo(tmp[i]) < 0
+                            ? tmp[j++] : tmp[i++];
+        } else {
+            while (i < split && j < to)
+                a[k++] = isLess.apply(tmp[i], tmp[j]) == Boolean.TRUE
+                            ? tmp[i++] : tmp[j++];
+        }
+        if (i < split)
+            System.arraycopy(tmp, i, a, k, split - i);
+        else if (j < to)
+            System.arraycopy(tmp, j, a, k, to - j);
+    }
+
+    static AList sort(AList l, Fun isLess) {
+        Object[] a;
+        if (l instanceof AMList) {
+            AMList m = (AMList) l;
+            int n = m._size() - m.start;
+            if (n <= 0)
+                return null;
+            System.arraycopy(m.array(), m.start, a = new Object[n], 0, n);
+        } else {
+            MList m = new MList(l);
+            a = new Object[m.size];
+            System.arraycopy(m.array(), 0, a, 0, a.length);
+        }
+        if (a.length > 1) {
+            int depth = 0;
+            int cpus = Runtime.getRuntime().availableProcessors();
+            while (1 << depth < cpus)
+                ++depth;
+            MergeSort s = new MergeSort(a, (Object[]) a.clone(), 0, a.length,
+                                        isLess, depth);
+            s.run();
+            Parallel.rethrow(s.error);
+        }
+        return new MList(a);
+    }
+}
+
+/**
+ * Parallel strict map, filter and fold.
+ * Arrays and integer ranges are split into one slice per processor,
+ * other lists are read in chunks that are then split the same way.
+ * The calling thread computes the last slice itself. Lists shorter
+ * than the threshold are processed sequentially.
+ */
+public final class Parallel extends Thread {
+    private static final int MAP = 0;
+    private static final int FILTER = 1;
+    private static final int FOLD = 2;
+
+    static volatile int threshold = 4096;
+
+    private final int op;
+    private final Fun f;
+    private final Object[] src;
+    private final long base;
+    private final int inc;
+    private final int from;
+    private final int to;
+    private final Object[] dst;
+    private Object value;
+    private int count;
+    private Throwable error;
+
+    private Parallel(int op, Fun f, Object[] src, long base, int inc,
+                     int from, int to, Object[] dst, Object value) {
+        this.op = op;
+        this.f = f;
+        this.src = src;
+        this.base = base;
+        this.inc = inc;
+        this.from = from;
+        this.to = to;
+        this.dst = dst;
+        this.value = value;
+    }
+
+    public void run() {
+        try {
+            compute();
+        } catch (Throwable ex) {
+            error = ex;
+        }
+    }
+
+    // element k of the source is src[base + k] or integer base + k * inc
+    private void compute() {
+        Object[] src = this.src;
+        Fun f = this.f;
+        int off = (int) base, i = from, e = to;
+        switch (op) {
+        case MAP:
+            if (src != null) {
+                for (; i < e; ++i)
+                    dst[i] = f.apply(src[off + i]);
+            } else {
+                for (; i < e; ++i)
+                    dst[i] = f.apply(IntNum.valueOf(base + (long) i * inc));
+            }
+            break;
+        case FILTER: {
+            int n = from;
+            for (; i < e; ++i) {
+                Object v = src != null ? src[off + i]
+                         : IntNum.valueOf(base + (long) i * inc);
+                if (f.apply(v) == Boolean.TRUE)
+                    dst[n++] = v;
+            }
+            count = n - from;
+            break;
+        }
+        default: {
+            Object v = value;
+            if (src != null) {
+                for (; i < e; ++i)
+                    v = f.apply(v, src[off + i]);
+            } else {
+                for (; i < e; ++i)
+                    v = f.apply(v, IntNum.valueOf(base + (long) i * inc));
+            }
+            value = v;
+        }
+        }
+    }
+
+    // joins the thread, keeping the interrupted status
+    static void await(Thread t) {
+        boolean interrupted = false;
+        for (;;) {
+            try {
+                t.join();
+                break;
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    // rethrows exception caught in worker thread
+    static void rethrow(Throwable error) {
+        if (error instanceof RuntimeException)
+            throw (RuntimeException) error;
+        if (error instanceof Error)
+            throw (Error) error;
+        if (error != null)
+            throw new RuntimeException(error);
+    }
+
+    private static Parallel[] split(int op, Fun f, Object[] src, long base,
+                                    int inc, int n, Object[] dst,
+                                    Object value) {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        int tasks = n / threshold;
+        if (tasks > cpus)
+            tasks = cpus;
+        if (tasks < 1)
+            tasks = 1;
+        Parallel[] p = new Parallel[tasks];
+        for (int i = 0; i < tasks; ++i)
+            p[i] = new Parallel(op, f, src, base, inc,
+                                (int) ((long) n * i / tasks),
+                                (int) ((long) n * (i + 1) / tasks),
+                                dst, value);
+        --tasks;
+        for (int i = 0; i < tasks; ++i) {
+            p[i].setDaemon(true);
+            p[i].start();
+        }
+        p[tasks].run();
+        for (int i = 0; i < tasks; ++i)
+            await(p[i]);
+        for (int i = 0; i <= tasks; ++i)
+            rethrow(p[i].error);
+        return p;
+    }
+
+    // packs the filtered slices together
+    private static int pack(Parallel[] p, Object[] dst) {
+        int n = p[0].count;
+        for (int i = 1; i < p.length; ++i) {
+            System.arraycopy(dst, p[i].from, dst, n, p[i].count);
+            n += p[i].count;
+        }
+        return n;
+    }
+
+    private static Object reduce(Parallel[] p, Fun f, Object v) {
+        for (int i = 0; i < p.length; ++i)
+            v = f.apply(v, p[i].value);
+        return v;
+    }
+
+    // applies op to array slice or int range, returns array size or value
+    private static Object apply(int op, Fun f, Object[] src, long base,
+                                int inc, int n, Object[] dst, Object value) {
+        Parallel[] p = split(op, f, src, base, inc, n, dst, value);
+        if (op == FOLD)
+            return p.length == 1 ? p[0].value : reduce(p, f, value);
+        return op == FILTER ? IntNum.valueOf(pack(p, dst)) : null;
+    }
+
+    private static Object run(int op, Fun f, AList l, Object value) {
+        Object[] src = null;
+        long base = 0;
+        int inc = 1, n = -1;
+        if (l instanceof AMList) {
+            AMList a = (AMList) l;
+            src = a.array();
+            base = a.start;
+            n = a._size() - a.start;
+        } else if (l instanceof ListRange) {
+            ListRange r = (ListRange) l;
+            long len;
+            if (r.rest == null && r.first instanceof IntNum &&
+                    r.last instanceof IntNum &&
+                    (len = r.length()) <= Integer.MAX_VALUE) {
+                base = r.first.longValue();
+                inc = r.inc;
+                n = (int) len;
+            }
+        }
+        if (n >= 0) {
+            Object[] dst = op == FOLD ? null : new Object[n];
+            Object res = apply(op, f, src, base, inc, n, dst, value);
+            if (op == FOLD)
+                return res;
+            if (op == FILTER)
+                n = ((IntNum) res).intValue();
+            if (n == 0)
+                return null;
+            if (n < dst.length)
+                System.arraycopy(dst, 0, dst = new Object[n], 0, n);
+            return new MList(dst);
+        }
+        // read other lists in chunks, as they may be lazy
+        int chunk = threshold * Runtime.getRuntime().availableProcessors();
+        MList result = op == FOLD ? null : new MList();
+        Object[] buf = new Object[chunk], dst = op == FOLD ? null : buf;
+        Object acc = value;
+        AIter i = l;
+        while (i != null) {
+            for (n = 0; n < chunk && i != null; i = i.next())
+                buf[n++] = i.first();
+            Object res = apply(op, f, buf, 0, 1, n, dst, value);
+            if (op == FOLD) {
+                acc = f.apply(acc, res);
+            } else {
+                if (op == FILTER)
+                    n = ((IntNum) res).intValue();
+                for (int j = 0; j < n; ++j)
+                    result.add(buf[j]);
+            }
+        }
+        return op == FOLD ? acc : result.size == 0 ? null : result;
+    }
+
+    /** Sets minimum number of elements given to a separate thread. */
+    public static void setThreshold(int n) {
+        threshold = n > 0 ? n : 1;
+    }
+
+    /**
+     * Sorted copy of the list using natural ordering.
+     * Large lists are merge sorted on multiple threads.
+     */
+    public static AList sort(AList l) {
+        return l instanceof NumArray || l instanceof ListRange ? l.sort()
+                : MergeSort.sort(l, null);
+    }
+
+    /**
+     * Sorted copy of the list using isLess predicate.
+     * The result is same as from the sequential sort(isLess).
+     */
+    public static AList sortBy(AList l, Fun isLess) {
+        return MergeSort.sort(l, isLess);
+    }
+
+    /** Strict map, applying f on multiple threads. */
+    public static AList map(Fun f, AList l) {
+        return (AList) run(MAP, f, l, null);
+    }
+
+    /** Strict filter, applying f on multiple threads. */
+    public static AList filter(Fun f, AList l) {
+        return (AList) run(FILTER, f, l, null);
+    }
+
+    /**
+     * Fold with associative f, where v is identity of f.
+     * Slices are folded separately and then their results together.
+     */
+    public static Object fold(Fun f, Object v, AList l) {
+        return run(FOLD, f, l, v);
+    }
+}
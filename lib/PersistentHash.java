@@ -0,0 +1,432 @@
+// ex: se sts=4 sw=4 expandtab:
+
+/**
+ * Yeti core library - persistent hash.
+ *
+ * Copyright (c) 2010 Madis Janson
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package yeti.lang;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Yeti core library - hash array mapped trie.
+ * Nodes are tagged with the edit token of the owning hash and are modified
+ * in place only by it, so bulk updates don't copy anything. The copy
+ * gives up the ownership by replacing the token, making it O(1) - after
+ * that both hashes copy the shared nodes on write (path copying).
+ */
+public class PersistentHash extends AbstractMap implements ByKey, Coll {
+    // key slot marker for a sub-node in the value slot
+    private static final Object SUB = new Object();
+    private static final Object NONE = new Object();
+    // shift after which all bits of the hash code have been used
+    private static final int MAX_SHIFT = 30;
+
+    private static final class Node {
+        Object edit;
+        int bitmap;
+        // key/value pairs, linear list of collisions when shift > MAX_SHIFT
+        Object[] array;
+
+        Node(Object edit, int bitmap, Object[] array) {
+            this.edit = edit;
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+    }
+
+    private Node root;
+    private int size;
+    private Object edit = new Object();
+    private Fun defaultFun;
+
+    public PersistentHash() {
+    }
+
+    public PersistentHash(Map map) {
+        putAll(map);
+    }
+
+    private PersistentHash(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    private static int hash(Object key) {
+        return key == null ? 0 : key.hashCode();
+    }
+
+    private static boolean eq(Object a, Object b) {
+        return a == b || a != null && a.equals(b);
+    }
+
+    private static int bitCount(int v) {
+        v -= (v >>> 1) & 0x55555555;
+        v = (v & 0x33333333) + ((v >>> 2) & 0x33333333);
+        v = (v + (v >>> 4)) & 0x0f0f0f0f;
+        return (v * 0x01010101) >>> 24;
+    }
+
+    private static Object[] insertPair(Object[] a, int at,
+                                       Object key, Object value) {
+        Object[] r = new Object[a.length + 2];
+        System.arraycopy(a, 0, r, 0, at);
+        System.arraycopy(a, at, r, at + 2, a.length - at);
+        r[at] = key;
+        r[at + 1] = value;
+        return r;
+    }
+
+    private static Object[] removePair(Object[] a, int at) {
+        Object[] r = new Object[a.length - 2];
+        System.arraycopy(a, 0, r, 0, at);
+        System.arraycopy(a, at + 2, r, at, r.length - at);
+        return r;
+    }
+
+    private Node editable(Node n) {
+        return n.edit == edit ? n
+                : new Node(edit, n.bitmap, (Object[]) n.array.clone());
+    }
+
+    private Node withArray(Node n, int bitmap, Object[] array) {
+        if (n.edit != edit)
+            return new Node(edit, bitmap, array);
+        n.bitmap = bitmap;
+        n.array = array;
+        return n;
+    }
+
+    private Object lookup(Object key, Object notFound) {
+        int hash = hash(key);
+        Node n = root;
+        for (int shift = 0; n != null; shift += 5) {
+            Object[] a = n.array;
+            if (shift > MAX_SHIFT) {
+                for (int i = 0; i < a.length; i += 2)
+                    if (eq(a[i], key))
+                        return a[i + 1];
+                break;
+            }
+            int bit = 1 << ((hash >>> shift) & 31);
+            if ((n.bitmap & bit) == 0)
+                break;
+            int i = bitCount(n.bitmap & (bit - 1)) << 1;
+            if (a[i] != SUB)
+                return eq(a[i], key) ? a[i + 1] : notFound;
+            n = (Node) a[i + 1];
+        }
+        return notFound;
+    }
+
+    // node with two entries, that were in the same slot on previous level
+    private Node pair(int shift, int h1, Object k1, Object v1,
+                      int h2, Object k2, Object v2) {
+        if (shift > MAX_SHIFT)
+            return new Node(edit, 0, new Object[] { k1, v1, k2, v2 });
+        int b1 = (h1 >>> shift) & 31, b2 = (h2 >>> shift) & 31;
+        if (b1 == b2)
+            return new Node(edit, 1 << b1, new Object[] { SUB,
+                            pair(shift + 5, h1, k1, v1, h2, k2, v2) });
+        return new Node(edit, 1 << b1 | 1 << b2, b1 < b2
+                            ? new Object[] { k1, v1, k2, v2 }
+                            : new Object[] { k2, v2, k1, v1 });
+    }
+
+    private Node assoc(Node n, int shift, int hash,
+                       Object key, Object value) {
+        Object[] a = n.array;
+        if (shift > MAX_SHIFT) {
+            for (int i = 0; i < a.length; i += 2)
+                if (eq(a[i], key)) {
+                    if (a[i + 1] == value)
+                        return n;
+                    n = editable(n);
+                    n.array[i + 1] = value;
+                    return n;
+                }
+            ++size;
+            return withArray(n, 0, insertPair(a, a.length, key, value));
+        }
+        int bit = 1 << ((hash >>> shift) & 31);
+        int i = bitCount(n.bitmap & (bit - 1)) << 1;
+        if ((n.bitmap & bit) == 0) {
+            ++size;
+            return withArray(n, n.bitmap | bit, insertPair(a, i, key, value));
+        }
+        Object k = a[i], v = a[i + 1];
+        if (k == SUB) {
+            Node sub = assoc((Node) v, shift + 5, hash, key, value);
+            if (sub == v)
+                return n;
+            v = sub;
+        } else if (eq(k, key)) {
+            if (v == value)
+                return n;
+            v = value;
+        } else {
+            ++size;
+            v = pair(shift + 5, hash(k), k, v, hash, key, value);
+            k = SUB;
+        }
+        n = editable(n);
+        n.array[i] = k;
+        n.array[i + 1] = v;
+        return n;
+    }
+
+    private Node without(Node n, int shift, int hash, Object key) {
+        Object[] a = n.array;
+        if (shift > MAX_SHIFT) {
+            for (int i = 0; i < a.length; i += 2)
+                if (eq(a[i], key)) {
+                    --size;
+                    return a.length == 2 ? null
+                        : withArray(n, 0, removePair(a, i));
+                }
+            return n;
+        }
+        int bit = 1 << ((hash >>> shift) & 31);
+        if ((n.bitmap & bit) == 0)
+            return n;
+        int i = bitCount(n.bitmap & (bit - 1)) << 1;
+        if (a[i] == SUB) {
+            Node sub = without((Node) a[i + 1], shift + 5, hash, key);
+            if (sub == a[i + 1])
+                return n;
+            if (sub != null) {
+                n = editable(n);
+                n.array[i + 1] = sub;
+                return n;
+            }
+        } else if (eq(a[i], key)) {
+            --size;
+        } else {
+            return n;
+        }
+        return n.bitmap == bit ? null
+            : withArray(n, n.bitmap ^ bit, removePair(a, i));
+    }
+
+    public Object get(Object key) {
+        return lookup(key, null);
+    }
+
+    public boolean containsKey(Object key) {
+        return lookup(key, NONE) != NONE;
+    }
+
+    public Object vget(Object key) {
+        Object x;
+        if ((x = lookup(key, NONE)) == NONE) {
+            if (defaultFun != null) {
+                return defaultFun.apply(key);
+            }
+            throw new NoSuchKeyException("Key not found (" + key + ")");
+        }
+        return x;
+    }
+
+    public Object put(Object key, Object value) {
+        int hash = hash(key);
+        Object old = null;
+        if (root == null) {
+            root = new Node(edit, 0, new Object[0]);
+        } else {
+            old = lookup(key, null);
+        }
+        root = assoc(root, 0, hash, key, value);
+        return old;
+    }
+
+    public Object remove(Object key) {
+        if (root == null)
+            return null;
+        Object old = lookup(key, null);
+        root = without(root, 0, hash(key), key);
+        return old;
+    }
+
+    public void removeAll(AList keys) {
+        if (keys != null && !keys.isEmpty())
+            for (AIter i = keys; i != null; i = i.next())
+                remove(i.first());
+    }
+
+    public void clear() {
+        root = null;
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long length() {
+        return size;
+    }
+
+    public void setDefault(Fun fun) {
+        defaultFun = fun;
+    }
+
+    /**
+     * Snapshot of the hash in O(1) time. Both this and the copy
+     * lose the ownership of the current nodes.
+     */
+    public Object copy() {
+        PersistentHash result = new PersistentHash(root, size);
+        result.defaultFun = defaultFun;
+        edit = new Object();
+        return result;
+    }
+
+    private final class Entry implements Map.Entry {
+        private final Object key;
+        private Object value;
+
+        Entry(Object key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public Object getKey() {
+            return key;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        public Object setValue(Object value) {
+            Object old = this.value;
+            // iterators don't survive in place modification
+            edit = new Object();
+            put(key, this.value = value);
+            return old;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry e = (Map.Entry) o;
+            return eq(key, e.getKey()) && eq(value, e.getValue());
+        }
+
+        public int hashCode() {
+            return hash(key) ^ hash(value);
+        }
+    }
+
+    private final class Iter implements Iterator {
+        // the tree is at most 8 levels deep
+        private final Node[] nodes = new Node[8];
+        private final int[] pos = new int[8];
+        private int sp = -1;
+        private Object key;
+        private Object value = NONE;
+        private Object last = NONE;
+
+        Iter() {
+            if (root != null)
+                nodes[++sp] = root;
+            advance();
+        }
+
+        private void advance() {
+            while (sp >= 0) {
+                Object[] a = nodes[sp].array;
+                int i = pos[sp];
+                if (i >= a.length) {
+                    --sp;
+                    continue;
+                }
+                pos[sp] = i + 2;
+                if (a[i] == SUB) {
+                    nodes[++sp] = (Node) a[i + 1];
+                    pos[sp] = 0;
+                } else {
+                    key = a[i];
+                    value = a[i + 1];
+                    return;
+                }
+            }
+            value = NONE;
+        }
+
+        public boolean hasNext() {
+            return value != NONE;
+        }
+
+        public Object next() {
+            if (value == NONE)
+                throw new NoSuchElementException();
+            Entry e = new Entry(key, value);
+            last = key;
+            advance();
+            return e;
+        }
+
+        public void remove() {
+            if (last == NONE)
+                throw new IllegalStateException();
+            // leave the iterated nodes untouched
+            edit = new Object();
+            PersistentHash.this.remove(last);
+            last = NONE;
+        }
+    }
+
+    public Set entrySet() {
+        return new AbstractSet() {
+            public Iterator iterator() {
+                return new Iter();
+            }
+
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    public AList asList() {
+        return new MList(values().toArray());
+    }
+
+    public String toString() {
+        return Show.toString(this);
+    }
+}
@@ -0,0 +1,164 @@
+// ex: se sts=4 sw=4 expandtab:
+
+/**
+ * Yeti core library - fused lazy list pipeline.
+ *
+ * Copyright (c) 2010 Madis Janson
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package yeti.lang;
+
+/**
+ * Lazy list of source elements passed through the map, filter, take
+ * and takeWhile stages. Stacking these on an open pipeline (with unforced
+ * rest) adds a stage instead of wrapping it, so the source is iterated
+ * once and only the resulting list cells are created. The compiler opens
+ * only pipelines given directly to another stage, like the filter in
+ * map f (filter p l), as the inner list must not be used separately
+ * (the inner stage functions would be applied again).
+ */
+public final class Pipeline extends LList {
+    private static final int MAP = 0;
+    private static final int FILTER = 1;
+    private static final int TAKE_WHILE = 2;
+    private static final int TAKE = 3;
+
+    private final int[] kinds;
+    private final Fun[] funs;
+    // elements left to take after this one, -1 when no take stage
+    private int left;
+    private AIter src;
+    private volatile boolean forced;
+    // no other reference to this list exists, so stages can be added
+    private boolean open;
+
+    private Pipeline(Object v, AIter src, int[] kinds, Fun[] funs, int left) {
+        super(v, null);
+        this.src = src;
+        this.kinds = kinds;
+        this.funs = funs;
+        this.left = left;
+    }
+
+    // passes v from the src through the stages starting at given one,
+    // continuing with the following source elements, until one gets through
+    private static AList run(Object v, int stage, AIter src,
+                             int[] kinds, Fun[] funs, int left) {
+        for (;;) {
+        stages:
+            for (; stage < kinds.length; ++stage) {
+                switch (kinds[stage]) {
+                case MAP:
+                    v = funs[stage].apply(v);
+                    break;
+                case FILTER:
+                    if (funs[stage].apply(v) != Boolean.TRUE)
+                        break stages;
+                    break;
+                case TAKE_WHILE:
+                    if (funs[stage].apply(v) != Boolean.TRUE)
+                        return null;
+                    break;
+                default: // TAKE
+                    if (left == 0)
+                        return null;
+                    --left;
+                }
+            }
+            if (stage >= kinds.length)
+                return new Pipeline(v, src, kinds, funs, left);
+            // no source cell is forced past the taken count
+            if (left == 0 || (src = src.next()) == null)
+                return null;
+            v = src.first();
+            stage = 0;
+        }
+    }
+
+    private static AList add(AIter src, int kind, Fun f, int n) {
+        if (src instanceof Pipeline) {
+            Pipeline p = (Pipeline) src;
+            synchronized (p) {
+                if (p.open && !p.forced && (kind != TAKE || p.left < 0)) {
+                    p.open = false;
+                    int l = p.kinds.length;
+                    int[] kinds = new int[l + 1];
+                    Fun[] funs = new Fun[l + 1];
+                    System.arraycopy(p.kinds, 0, kinds, 0, l);
+                    System.arraycopy(p.funs, 0, funs, 0, l);
+                    kinds[l] = kind;
+                    funs[l] = f;
+                    return run(p.first, l, p.src, kinds, funs,
+                               kind == TAKE ? n : p.left);
+                }
+            }
+        }
+        return run(src.first(), 0, src, new int[] { kind }, new Fun[] { f },
+                   kind == TAKE ? n : -1);
+    }
+
+    /**
+     * Allows adding the next stage to the list into the same pipeline.
+     * Compiler calls it only on a list that isn't referenced otherwise.
+     */
+    public static Object open(Object list) {
+        if (list instanceof Pipeline)
+            ((Pipeline) list).open = true;
+        return list;
+    }
+
+    static AList map(AIter src, Fun f) {
+        return add(src, MAP, f, 0);
+    }
+
+    static AList filter(AIter src, Fun f) {
+        return src == null ? null : add(src, FILTER, f, 0);
+    }
+
+    static AList takeWhile(AIter src, Fun f) {
+        return add(src, TAKE_WHILE, f, 0);
+    }
+
+    static AList take(AIter src, int n) {
+        if (src instanceof Rope)
+            return ((Rope) src).take(n);
+        return n <= 0 ? null : add(src, TAKE, null, n);
+    }
+
+    public AList rest() {
+        if (!forced) {
+            synchronized (this) {
+                if (!forced) {
+                    AIter i;
+                    rest = left == 0 || (i = src.next()) == null ? null
+                         : run(i.first(), 0, i, kinds, funs, left);
+                    src = null;
+                    forced = true;
+                }
+            }
+        }
+        return rest;
+    }
+}
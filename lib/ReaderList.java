@@ -35,7 +35,7 @@ import java.io.IOException;
 
 /** Yeti core library - BufferedReader list. */
 final class ReaderList extends LList {
-    private boolean forced;
+    private volatile boolean forced;
     private BufferedReader r;
 
     private ReaderList(String line, BufferedReader r) {
@@ -44,15 +44,19 @@ final class ReaderList extends LList {
     }
 
     public AList rest() {
-        synchronized (r) {
-            if (!forced) {
-                rest = lines(r);
-                forced = true;
+        if (!forced) {
+            synchronized (r) {
+                if (!forced) {
+                    rest = lines(r);
+                    forced = true;
+                }
             }
-            return rest;
         }
+        return rest;
     }
 
+    // Lines already available without blocking are read ahead into
+    // chunk, the last line read getting the lazy rest.
     static AList lines(BufferedReader r) {
         try {
             String line = null;
@@ -60,7 +64,17 @@ final class ReaderList extends LList {
                 if ((line = r.readLine()) == null) {
                     return null;
                 }
-                return new ReaderList(line, r);
+                Object[] chunk = null;
+                int n = 0;
+                while (n < ChunkList.CHUNK && r.ready()) {
+                    if (chunk == null)
+                        chunk = new Object[ChunkList.CHUNK];
+                    chunk[n++] = line;
+                    if ((line = r.readLine()) == null)
+                        return new ChunkList(chunk, 0, n, null);
+                }
+                AList rest = new ReaderList(line, r);
+                return chunk == null ? rest : new ChunkList(chunk, 0, n, rest);
             } finally {
                 if (line == null) {
                     r.close();
@@ -0,0 +1,456 @@
+// ex: se sts=4 sw=4 expandtab:
+
+/**
+ * Yeti core library - rope list.
+ *
+ * Copyright (c) 2010 Madis Janson
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package yeti.lang;
+
+import java.io.Serializable;
+
+final class RopeIter extends AIter implements Serializable {
+    private final Rope.Node root;
+    private Object[] items;
+    private int i;
+    private int end;
+    private int next; // rope index after the current leaf
+
+    RopeIter(Rope.Node root, int at) {
+        this.root = root;
+        leaf(at);
+    }
+
+    // positions to the leaf containing rope index at
+    private void leaf(int at) {
+        Rope.Node n = root;
+        int i = at;
+        while (n.items == null) {
+            if (i < n.left.size) {
+                n = n.left;
+            } else {
+                i -= n.left.size;
+                n = n.right;
+            }
+        }
+        items = n.items;
+        this.i = n.off + i;
+        end = n.off + n.size;
+        next = at + n.size - i;
+    }
+
+    public Object first() {
+        return items[i];
+    }
+
+    public AIter next() {
+        if (++i < end)
+            return this;
+        if (next >= root.size)
+            return null;
+        leaf(next);
+        return this;
+    }
+}
+
+/**
+ * Yeti core library - rope list.
+ * Immutable balanced tree of array chunks, giving O(log n) concatenation,
+ * indexing and slicing. The list is view of the tree from given index.
+ */
+public final class Rope extends AList implements Serializable {
+    // smaller leaves are merged on concatenation
+    static final int CHUNK = 32;
+
+    static final class Node implements Serializable {
+        final Object[] items; // null for inner node
+        final int off;
+        final Node left;
+        final Node right;
+        final int size;
+        final int depth;
+
+        Node(Object[] items, int off, int size) {
+            this.items = items;
+            this.off = off;
+            this.size = size;
+            left = null;
+            right = null;
+            depth = 0;
+        }
+
+        Node(Node left, Node right) {
+            items = null;
+            off = 0;
+            this.left = left;
+            this.right = right;
+            size = left.size + right.size;
+            depth = (left.depth > right.depth ? left.depth : right.depth) + 1;
+        }
+    }
+
+    private final Node root;
+    private final int pos;
+    // current leaf, so rest can step without descending from root
+    private final Object[] items;
+    private final int at;
+    private final int end;
+    // rest, so walking with rest() allocates each cell once
+    private volatile Rope restRope;
+
+    private Rope(Node root, int pos) {
+        Node n = root;
+        int i = pos;
+        while (n.items == null) {
+            if (i < n.left.size) {
+                n = n.left;
+            } else {
+                i -= n.left.size;
+                n = n.right;
+            }
+        }
+        this.root = root;
+        this.pos = pos;
+        items = n.items;
+        at = n.off + i;
+        end = n.off + n.size;
+    }
+
+    private Rope(Rope r) {
+        root = r.root;
+        pos = r.pos + 1;
+        items = r.items;
+        at = r.at + 1;
+        end = r.end;
+    }
+
+    private static Object get(Node n, int i) {
+        while (n.items == null) {
+            if (i < n.left.size) {
+                n = n.left;
+            } else {
+                i -= n.left.size;
+                n = n.right;
+            }
+        }
+        return n.items[n.off + i];
+    }
+
+    private static void copy(Node n, Object[] to, int at) {
+        if (n.items != null) {
+            System.arraycopy(n.items, n.off, to, at, n.size);
+        } else {
+            copy(n.left, to, at);
+            copy(n.right, to, at + n.left.size);
+        }
+    }
+
+    // new node with AVL rotation, when the depths differ by two
+    private static Node node(Node l, Node r) {
+        if (l.depth > r.depth + 1) {
+            Node lr = l.right;
+            if (l.left.depth >= lr.depth)
+                return new Node(l.left, new Node(lr, r));
+            return new Node(new Node(l.left, lr.left), new Node(lr.right, r));
+        }
+        if (r.depth > l.depth + 1) {
+            Node rl = r.left;
+            if (r.right.depth >= rl.depth)
+                return new Node(new Node(l, rl), r.right);
+            return new Node(new Node(l, rl.left), new Node(rl.right, r.right));
+        }
+        return new Node(l, r);
+    }
+
+    static Node join(Node a, Node b) {
+        if (a == null || a.size == 0)
+            return b;
+        if (b == null || b.size == 0)
+            return a;
+        if (a.size + b.size <= CHUNK) {
+            Object[] items = new Object[a.size + b.size];
+            copy(a, items, 0);
+            copy(b, items, a.size);
+            return new Node(items, 0, items.length);
+        }
+        if (a.depth > b.depth)
+            return node(a.left, join(a.right, b));
+        if (b.depth > a.depth)
+            return node(join(a, b.left), b.right);
+        return new Node(a, b);
+    }
+
+    static Node slice(Node n, int from, int to) {
+        if (from <= 0 && to >= n.size)
+            return n;
+        if (from >= to)
+            return null;
+        if (n.items != null)
+            return new Node(n.items, n.off + from, to - from);
+        int ls = n.left.size;
+        if (to <= ls)
+            return slice(n.left, from, to);
+        if (from >= ls)
+            return slice(n.right, from - ls, to - ls);
+        return join(slice(n.left, from, ls), slice(n.right, 0, to - ls));
+    }
+
+    // balanced tree of leaves up to CHUNK elements over a[from .. to - 1]
+    private static Node leaves(Object[] a, int from, int to) {
+        if (to - from <= CHUNK)
+            return new Node(a, from, to - from);
+        int mid = (from + to) >>> 1;
+        return new Node(leaves(a, from, mid), leaves(a, mid, to));
+    }
+
+    // tree of strict list, or null when the list may be lazy
+    private static Node tree(AList l) {
+        if (l instanceof Rope) {
+            Rope r = (Rope) l;
+            return slice(r.root, r.pos, r.root.size);
+        }
+        // arrays are mutable, so the elements are copied
+        if (l instanceof AMList) {
+            AMList m = (AMList) l;
+            int n = m._size() - m.start;
+            Object[] a = new Object[n > 0 ? n : 0];
+            System.arraycopy(m.array(), m.start, a, 0, a.length);
+            return leaves(a, 0, a.length);
+        }
+        // plain lists are strict up to the first other tail
+        Object[] a = new Object[CHUNK];
+        int n = 0;
+        AList i = l;
+        for (; i != null && i.getClass() == LList.class; i = i.rest()) {
+            if (n >= a.length) {
+                Object[] tmp = new Object[n * 2];
+                System.arraycopy(a, 0, tmp, 0, n);
+                a = tmp;
+            }
+            a[n++] = i.first();
+        }
+        Node t = leaves(a, 0, n);
+        if (i == null)
+            return t;
+        Node r = i instanceof Rope || i instanceof AMList ? tree(i) : null;
+        return r == null ? null : join(t, r);
+    }
+
+    private static AList list(Node n) {
+        return n == null || n.size == 0 ? null : new Rope(n, 0);
+    }
+
+    /**
+     * Concatenation of a and b. Gives rope, when both are strict
+     * (ropes, arrays or plain lists), otherwise lazy concat list.
+     * Arrays and plain lists are copied into the rope in O(n).
+     */
+    public static AList concat(AList a, AList b) {
+        Node x, y;
+        if ((y = tree(b)) == null || (x = tree(a)) == null)
+            return new ConcatList(a, b);
+        return list(join(x, y));
+    }
+
+    /**
+     * Concatenation of list of lists. Gives rope, when the src and
+     * all the lists in it are strict, otherwise lazy concat list.
+     */
+    public static AList concatAll(AIter src) {
+        boolean array = src instanceof AMList;
+        Node r = null;
+        for (AIter i = src; i != null; i = i.next()) {
+            AList l;
+            Node t = null;
+            if (!array && i.getClass() != LList.class ||
+                (l = (AList) i.first()) != null && (t = tree(l)) == null)
+                return ConcatLists.concat(src);
+            r = join(r, t);
+        }
+        return list(r);
+    }
+
+    public Object first() {
+        return items[at];
+    }
+
+    public AList rest() {
+        Rope r = restRope;
+        if (r == null) {
+            if (pos + 1 >= root.size)
+                return null;
+            restRope = r = at + 1 < end ? new Rope(this)
+                                        : new Rope(root, pos + 1);
+        }
+        return r;
+    }
+
+    public AIter next() {
+        return pos + 1 < root.size ? new RopeIter(root, pos + 1) : null;
+    }
+
+    /** Element at index i. */
+    public Object get(int i) {
+        if (i < 0 || i >= root.size - pos)
+            throw new IndexOutOfBoundsException("Index: " + i);
+        return get(root, pos + i);
+    }
+
+    /** Rope of elements from index from to index to - 1. */
+    public AList slice(int from, int to) {
+        int size = root.size - pos;
+        return list(slice(root, pos + (from > 0 ? from : 0),
+                                pos + (to < size ? to : size)));
+    }
+
+    /** Rope without the first n elements. */
+    public AList drop(int n) {
+        return n <= 0 ? this : pos + n < root.size
+                ? new Rope(root, pos + n) : null;
+    }
+
+    /** Rope of the first n elements. */
+    public AList take(int n) {
+        return slice(0, n);
+    }
+
+    public long length() {
+        return root.size - pos;
+    }
+
+    private Object[] toArray() {
+        Object[] a = new Object[root.size - pos];
+        if (pos == 0)
+            copy(root, a, 0);
+        else
+            copy(slice(root, pos, root.size), a, 0);
+        return a;
+    }
+
+    public void forEach(Object fun) {
+        Fun f = (Fun) fun;
+        for (AIter i = new RopeIter(root, pos); i != null; i = i.next())
+            f.apply(i.first());
+    }
+
+    public Object fold(Fun f, Object v) {
+        for (AIter i = new RopeIter(root, pos); i != null; i = i.next())
+            v = f.apply(v, i.first());
+        return v;
+    }
+
+    public AList find(Fun pred) {
+        int n = pos;
+        for (AIter i = new RopeIter(root, pos); i != null; i = i.next()) {
+            if (pred.apply(i.first()) == Boolean.TRUE)
+                return n == pos ? this : new Rope(root, n);
+            ++n;
+        }
+        return null;
+    }
+
+    public Num index(Object v) {
+        int n = 0;
+        for (AIter i = new RopeIter(root, pos); i != null; i = i.next()) {
+            Object x = i.first();
+            if (v == null ? x == null : v.equals(x))
+                return IntNum.valueOf(n);
+            ++n;
+        }
+        return null;
+    }
+
+    public AList smap(Fun f) {
+        Object[] a = new Object[root.size - pos];
+        AIter i = new RopeIter(root, pos);
+        for (int n = 0; i != null; i = i.next())
+            a[n++] = f.apply(i.first());
+        return new MList(a);
+    }
+
+    public AList reverse() {
+        Object[] a = toArray();
+        for (int i = 0, j = a.length - 1; i < j; ++i, --j) {
+            Object t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+        return new MList(a);
+    }
+
+    public AList sort() {
+        return new MList(toArray()).asort();
+    }
+
+    public AList sort(Fun isLess) {
+        return new MList(toArray()).asort(isLess);
+    }
+
+    public Object copy() {
+        return this;
+    }
+
+    public int hashCode() {
+        int hashCode = 1;
+        for (AIter i = new RopeIter(root, pos); i != null; i = i.next()) {
+            Object x = i.first();
+            hashCode = 31 * hashCode + (x == null ? 0 : x.hashCode());
+        }
+        return hashCode;
+    }
+
+    public boolean equals(Object obj) {
+        if (!(obj instanceof AList)) {
+            return false;
+        }
+        AIter i = (AList) obj, j = new RopeIter(root, pos);
+        Object x, y;
+        while (i != null && j != null &&
+               ((x = i.first()) == (y = j.first()) ||
+                x != null && x.equals(y))) {
+            i = i.next();
+            j = j.next();
+        }
+        return i == null && j == null;
+    }
+
+    public int compareTo(Object obj) {
+        AIter i = new RopeIter(root, pos), j = (AIter) obj;
+        while (i != null && j != null) {
+            int r;
+            if ((r = ((Comparable) i.first()).compareTo(j.first())) != 0) {
+                return r;
+            }
+            i = i.next();
+            j = j.next();
+        }
+        return i != null ? 1 : j != null ? -1 : 0;
+    }
+
+    public String toString() {
+        return Show.toString(this);
+    }
+}
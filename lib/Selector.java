@@ -30,14 +30,70 @@
  */
 package yeti.lang;
 
+/**
+ * Field selection function, also used as the inline cache of field
+ * selection sites. The last two structure shapes (interned names arrays)
+ * seen with their field indexes are remembered, and on a hit the field
+ * is fetched with get(int) instead of searching it by name. Sites that
+ * keep missing are considered megamorphic and always use get(String).
+ */
 public final class Selector extends Fun {
+    private static final int MAX_MISSES = 16;
+
     private final String name;
+    private Entry first;
+    private Entry second;
+    private int misses;
+
+    // immutable, so the entry can be replaced without synchronization
+    private static final class Entry {
+        final String[] names;
+        final int index;
+
+        Entry(String[] names, int index) {
+            this.names = names;
+            this.index = index;
+        }
+    }
 
     public Selector(String aName) {
         name = aName;
     }
 
+    /**
+     * Cached index of the field in value's structure shape or -1.
+     * Compiled selection sites call get(int) themselves on a hit.
+     */
+    public static int index(Fun selector, Object value) {
+        Selector sel = (Selector) selector;
+        if (sel.misses < MAX_MISSES && value instanceof AStruct) {
+            String[] names = ((AStruct) value).names;
+            Entry e;
+            if ((e = sel.first) != null && e.names == names ||
+                (e = sel.second) != null && e.names == names)
+                return e.index;
+        }
+        return -1;
+    }
+
     public final Object apply(Object value) {
+        if (misses < MAX_MISSES && value instanceof AStruct) {
+            AStruct st = (AStruct) value;
+            String[] names = st.names;
+            Entry e;
+            if ((e = first) != null && e.names == names ||
+                (e = second) != null && e.names == names)
+                return st.get(e.index);
+            if (names != null) {
+                ++misses;
+                for (int i = names.length; --i >= 0;)
+                    if (names[i] == name) {
+                        second = first;
+                        first = new Entry(names, i);
+                        return st.get(i);
+                    }
+            }
+        }
         return ((Struct) value).get(name);
     }
 }
@@ -0,0 +1,253 @@
+// ex: se sts=4 sw=4 expandtab:
+
+/**
+ * Yeti core library - streaming show.
+ *
+ * Copyright (c) 2010 Madis Janson
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package yeti.lang;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Writes string representation of values directly into Writer,
+ * without building separate strings of the nested lists, hashes
+ * and structures. Optionally the nesting depth and number of shown
+ * elements are limited, the omitted parts being written as "...".
+ */
+public final class Show {
+    // elements shown from lazy lists, which may be infinite
+    private static final int LAZY_LIMIT = 101;
+
+    private final Writer out;
+    private final int maxDepth;
+    private final int maxLength;
+
+    // PrintStream as Writer, encoding the characters as the stream does
+    private static final class StreamWriter extends Writer {
+        private final PrintStream out;
+
+        StreamWriter(PrintStream out) {
+            this.out = out;
+        }
+
+        public void write(char[] buf, int off, int len) {
+            out.print(new String(buf, off, len));
+        }
+
+        public void flush() {
+            out.flush();
+        }
+
+        public void close() {
+        }
+    }
+
+    private Show(Writer out, int maxDepth, int maxLength) {
+        this.out = out;
+        this.maxDepth = maxDepth;
+        this.maxLength = maxLength;
+    }
+
+    private static boolean isColl(Object o) {
+        return o instanceof AList || o instanceof AStruct || o instanceof Tag ||
+               o instanceof ByKey && o instanceof Map &&
+               !(o instanceof IdentityHash);
+    }
+
+    private void string(String s) throws IOException {
+        out.write('"');
+        int p = 0, i = 0, cnt = s.length();
+        for (String c; i < cnt; ++i) {
+            char ch = s.charAt(i);
+            if (ch == '\\') {
+                c = "\\\\";
+            } else if (ch == '"') {
+                c = "\\\"";
+            } else if (ch == '\n') {
+                c = "\\n";
+            } else if (ch == '\r') {
+                c = "\\r";
+            } else if (ch == '\t') {
+                c = "\\t";
+            } else {
+                continue;
+            }
+            out.write(s, p, i - p);
+            out.write(c);
+            p = i + 1;
+        }
+        out.write(s, p, i - p);
+        out.write('"');
+    }
+
+    private void value(Object o, int depth) throws IOException {
+        if (o == null) {
+            out.write("[]");
+        } else if (o instanceof String) {
+            string((String) o);
+        } else if (o instanceof Tag) {
+            Tag t = (Tag) o;
+            out.write(t.name);
+            out.write(' ');
+            value(t.value, depth);
+        } else if (!isColl(o)) {
+            out.write(o.toString());
+        } else if (depth >= maxDepth) {
+            out.write("...");
+        } else if (o instanceof AList) {
+            list((AList) o, depth + 1);
+        } else if (o instanceof AStruct) {
+            struct((AStruct) o, depth + 1);
+        } else {
+            hash((Map) o, depth + 1);
+        }
+    }
+
+    private void list(AList l, int depth) throws IOException {
+        int limit = maxLength;
+        if ((l instanceof LazyList || l instanceof Iterate) &&
+                limit > LAZY_LIMIT)
+            limit = LAZY_LIMIT;
+        out.write('[');
+        AIter i = l.isEmpty() ? null : l;
+        for (int n = 0; i != null && n < limit; i = i.next()) {
+            if (n++ != 0)
+                out.write(',');
+            value(i.first(), depth);
+        }
+        if (i != null)
+            out.write("...");
+        out.write(']');
+    }
+
+    private void hash(Map map, int depth) throws IOException {
+        if (map.isEmpty()) {
+            out.write("[:]");
+            return;
+        }
+        out.write('[');
+        Iterator i = map.entrySet().iterator();
+        for (int n = 0; i.hasNext(); ++n) {
+            if (n >= maxLength) {
+                out.write("...");
+                break;
+            }
+            Map.Entry e = (Map.Entry) i.next();
+            if (n != 0)
+                out.write(',');
+            value(e.getKey(), depth);
+            out.write(':');
+            value(e.getValue(), depth);
+        }
+        out.write(']');
+    }
+
+    private void struct(AStruct st, int depth) throws IOException {
+        out.write('{');
+        for (int cnt = st.count(), i = 0; i < cnt; ++i) {
+            if (i != 0)
+                out.write(", ");
+            out.write(st.name(i));
+            out.write('=');
+            value(st.get(i), depth);
+        }
+        out.write('}');
+    }
+
+    /**
+     * Writes v like string v, showing at most maxDepth levels of nested
+     * lists, hashes and structures and maxLength elements of each.
+     */
+    public static void write(Object v, Writer out, int maxDepth,
+                             int maxLength) throws IOException {
+        if (v instanceof String)
+            out.write((String) v);
+        else
+            new Show(out, maxDepth, maxLength).value(v, 0);
+    }
+
+    /** Writes v like string v into the writer. */
+    public static void write(Object v, Writer out) throws IOException {
+        write(v, out, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /** Same as string v, but with depth and length limits. */
+    public static String toString(Object v, int maxDepth, int maxLength) {
+        if (v instanceof String)
+            return (String) v;
+        StringWriter w = new StringWriter();
+        try {
+            new Show(w, maxDepth, maxLength).value(v, 0);
+        } catch (IOException ex) {
+            Unsafe.unsafeThrow(ex);
+        }
+        return w.toString();
+    }
+
+    // used by the toString methods of the lists, hashes and structures
+    static String toString(Object v) {
+        return toString(v, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    static String quote(String s) {
+        StringWriter w = new StringWriter(s.length() + 2);
+        try {
+            new Show(w, 0, 0).string(s);
+        } catch (IOException ex) {
+            Unsafe.unsafeThrow(ex);
+        }
+        return w.toString();
+    }
+
+    /** Prints v like out.print(v), or println when newline is true. */
+    public static void print(Object v, PrintStream out, boolean newline) {
+        if (!isColl(v)) {
+            if (newline)
+                out.println(v);
+            else
+                out.print(v);
+            return;
+        }
+        synchronized (out) {
+            Writer w = new BufferedWriter(new StreamWriter(out));
+            try {
+                write(v, w);
+                w.flush();
+            } catch (IOException ex) {
+                Unsafe.unsafeThrow(ex);
+            }
+            if (newline)
+                out.println();
+        }
+    }
+}
@@ -0,0 +1,248 @@
+// ex: se sts=4 sw=4 expandtab:
+
+/**
+ * Yeti core library - hash with string keys.
+ *
+ * Copyright (c) 2010 Madis Janson
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package yeti.lang;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Hash for string keys, stored in open addressing table.
+ * Works with any keys having usual equals and hashCode.
+ */
+public final class StrHash extends OpenHash {
+    // null key is stored as NULL, so that null marks empty slot
+    private static final Object NULL = new Object();
+    private transient Object[] keys;
+    private transient Object[] vals;
+    private transient int size;
+    private transient int shift;
+
+    public StrHash() {
+        this(0);
+    }
+
+    public StrHash(int initialCapacity) {
+        init(initialCapacity);
+    }
+
+    void init(int initialCapacity) {
+        int cap = capacity(initialCapacity);
+        shift = 32 - bits(cap);
+        keys = new Object[cap];
+        vals = new Object[cap];
+        size = 0;
+    }
+
+    // fibonacci hashing, the top bits of product select the slot
+    private int slot(Object key) {
+        return key.hashCode() * 0x9e3779b9 >>> shift;
+    }
+
+    private int find(Object key) {
+        Object[] keys = this.keys;
+        int mask = keys.length - 1;
+        Object k;
+        for (int i = slot(key); (k = keys[i]) != null; i = i + 1 & mask)
+            if (k == key || k.equals(key))
+                return i;
+        return -1;
+    }
+
+    Object lookup(Object key) {
+        int i = find(key == null ? NULL : key);
+        return i < 0 ? NONE : vals[i];
+    }
+
+    private void resize(int cap) {
+        Object[] oldKeys = keys;
+        Object[] oldVals = vals;
+        shift = 32 - bits(cap);
+        keys = new Object[cap];
+        vals = new Object[cap];
+        int mask = cap - 1;
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldKeys[i] != null) {
+                int j = slot(oldKeys[i]);
+                while (keys[j] != null)
+                    j = j + 1 & mask;
+                keys[j] = oldKeys[i];
+                vals[j] = oldVals[i];
+            }
+        }
+    }
+
+    public Object put(Object key, Object value) {
+        if (key == null)
+            key = NULL;
+        int mask = keys.length - 1, i = slot(key);
+        for (Object k; (k = keys[i]) != null; i = i + 1 & mask) {
+            if (k == key || k.equals(key)) {
+                Object old = vals[i];
+                vals[i] = value;
+                return old;
+            }
+        }
+        keys[i] = key;
+        vals[i] = value;
+        if (++size > keys.length - (keys.length >>> 2))
+            resize(keys.length << 1);
+        return null;
+    }
+
+    public Object remove(Object key) {
+        int i = find(key == null ? NULL : key);
+        if (i < 0)
+            return null;
+        Object old = vals[i];
+        Object[] keys = this.keys;
+        Object[] vals = this.vals;
+        int mask = keys.length - 1;
+        // backward shift the following entries that probed over the slot
+        for (int j = i + 1 & mask; keys[j] != null; j = j + 1 & mask) {
+            int s = slot(keys[j]);
+            if (i <= j ? i < s && s <= j : i < s || s <= j)
+                continue;
+            keys[i] = keys[j];
+            vals[i] = vals[j];
+            i = j;
+        }
+        keys[i] = null;
+        vals[i] = null;
+        --size;
+        return old;
+    }
+
+    public void clear() {
+        init(0);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Object copy() {
+        StrHash result = new StrHash();
+        result.keys = (Object[]) keys.clone();
+        result.vals = (Object[]) vals.clone();
+        result.size = size;
+        result.shift = shift;
+        result.defaultFun = defaultFun;
+        return result;
+    }
+
+    private final class Entry implements Map.Entry {
+        private final Object key;
+        private Object value;
+
+        Entry(Object key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public Object getKey() {
+            return key;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        public Object setValue(Object value) {
+            Object old = this.value;
+            put(key, this.value = value);
+            return old;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry e = (Map.Entry) o;
+            Object k = e.getKey(), v = e.getValue();
+            return (key == null ? k == null : key.equals(k)) &&
+                   (value == null ? v == null : value.equals(v));
+        }
+
+        public int hashCode() {
+            return (key == null ? 0 : key.hashCode()) ^
+                   (value == null ? 0 : value.hashCode());
+        }
+    }
+
+    private final class Iter implements Iterator {
+        private Object[] keys = StrHash.this.keys;
+        private Object[] vals = StrHash.this.vals;
+        private boolean copied;
+        private int pos;
+        private Object last = NONE;
+
+        public boolean hasNext() {
+            while (pos < keys.length && keys[pos] == null)
+                ++pos;
+            return pos < keys.length;
+        }
+
+        public Object next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            Object k = keys[pos];
+            last = k == NULL ? null : k;
+            return new Entry(last, vals[pos++]);
+        }
+
+        public void remove() {
+            if (last == NONE)
+                throw new IllegalStateException();
+            // removal moves entries around, so continue on a copy
+            if (!copied) {
+                keys = (Object[]) keys.clone();
+                vals = (Object[]) vals.clone();
+                copied = true;
+            }
+            StrHash.this.remove(last);
+            last = NONE;
+        }
+    }
+
+    public Set entrySet() {
+        return new AbstractSet() {
+            public Iterator iterator() {
+                return new Iter();
+            }
+
+            public int size() {
+                return size;
+            }
+        };
+    }
+}
@@ -30,7 +30,10 @@
  */
 package yeti.lang;
 
-/** Yeti core library - takeWhile list. */
+/**
+ * Yeti core library - takeWhile list.
+ * @deprecated Pipeline is used instead, kept for compiled code using it.
+ */
 final class TakeWhile extends LList {
     private AIter src;
     private Fun pred;
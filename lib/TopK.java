@@ -0,0 +1,194 @@
+// ex: se sts=4 sw=4 expandtab:
+
+/**
+ * Yeti core library - top k selection.
+ *
+ * Copyright (c) 2010 Madis Janson
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package yeti.lang;
+
+/**
+ * Selects first k elements of list in the sorted order using bounded
+ * heap, so only O(k) elements are kept in memory while the list is
+ * iterated. Equal elements are taken in the list order.
+ */
+public final class TopK {
+    private final Fun isLess;
+    private final boolean desc;
+    private Object[] vals;
+    private Object[] keys;
+    private long[] seq;
+    private int size;
+
+    private TopK(Fun isLess, boolean desc, int capacity) {
+        this.isLess = isLess;
+        this.desc = desc;
+        vals = new Object[capacity];
+        keys = new Object[capacity];
+        seq = new long[capacity];
+    }
+
+    // whether a precedes b in the result order
+    private boolean less(Object a, Object b) {
+        if (desc) {
+            Object t = a;
+            a = b;
+            b = t;
+        }
+        return isLess != null ? isLess.apply(a, b) == Boolean.TRUE
+                              : ((Comparable) a).compareTo(b) < 0;
+    }
+
+    // heap root is the worst element, the first one to drop
+    private boolean worse(int i, int j) {
+        return less(keys[j], keys[i]) ||
+               seq[i] > seq[j] && !less(keys[i], keys[j]);
+    }
+
+    private void swap(int i, int j) {
+        Object v = vals[i], k = keys[i];
+        long s = seq[i];
+        vals[i] = vals[j];
+        keys[i] = keys[j];
+        seq[i] = seq[j];
+        vals[j] = v;
+        keys[j] = k;
+        seq[j] = s;
+    }
+
+    private void siftDown(int i) {
+        for (int c; (c = i * 2 + 1) < size; i = c) {
+            if (c + 1 < size && worse(c + 1, c))
+                ++c;
+            if (!worse(c, i))
+                break;
+            swap(i, c);
+        }
+    }
+
+    private void add(Object v, Object k, long n, int max) {
+        if (size < max) {
+            if (size >= vals.length) {
+                int cap = size * 2 < max ? size * 2 : max;
+                Object[] a = new Object[cap];
+                System.arraycopy(vals, 0, a, 0, size);
+                vals = a;
+                System.arraycopy(keys, 0, a = new Object[cap], 0, size);
+                keys = a;
+                long[] s = new long[cap];
+                System.arraycopy(seq, 0, s, 0, size);
+                seq = s;
+            }
+            int i = size++;
+            vals[i] = v;
+            keys[i] = k;
+            seq[i] = n;
+            for (int p; i > 0 && worse(i, p = (i - 1) / 2); i = p)
+                swap(i, p);
+        } else if (less(k, keys[0])) {
+            vals[0] = v;
+            keys[0] = k;
+            seq[0] = n;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * First k elements of sortBy isLess l (natural order, when isLess
+     * is null). The key function (when not null) is applied once for
+     * each element, and the keys are compared instead of elements.
+     * Descending selects from the reverse order.
+     */
+    public static AList select(AList l, int k, Fun isLess, Fun key,
+                               boolean descending) {
+        if (k <= 0 || l == null)
+            return null;
+        TopK h = new TopK(isLess, descending, k < 16 ? k : 16);
+        AIter i = l;
+        l = null; // don't keep the list head in memory
+        for (long n = 0; i != null; i = i.next(), ++n) {
+            Object v = i.first();
+            h.add(v, key == null ? v : key.apply(v), n, k);
+        }
+        Object[] r = new Object[h.size];
+        while (h.size > 0) {
+            r[--h.size] = h.vals[0];
+            h.swap(0, h.size);
+            h.vals[h.size] = null;
+            h.keys[h.size] = null;
+            h.siftDown(0);
+        }
+        return r.length == 0 ? null : new MList(r);
+    }
+
+    private static boolean less(Fun isLess, Object a, Object b) {
+        return isLess != null ? isLess.apply(a, b) == Boolean.TRUE
+                              : ((Comparable) a).compareTo(b) < 0;
+    }
+
+    private static void siftDown(Object[] a, int from, int i, int size,
+                                 Fun isLess) {
+        for (int c; (c = i * 2 + 1) < size; i = c) {
+            if (c + 1 < size && less(isLess, a[from + c], a[from + c + 1]))
+                ++c;
+            if (!less(isLess, a[from + i], a[from + c]))
+                break;
+            Object t = a[from + i];
+            a[from + i] = a[from + c];
+            a[from + c] = t;
+        }
+    }
+
+    /**
+     * Moves k least elements of a[from .. to - 1] into sorted order at
+     * from, leaving the rest in unspecified order after them.
+     * The equal elements may be reordered.
+     */
+    static void partialSort(Object[] a, int from, int to, int k,
+                            Fun isLess) {
+        if (k > to - from)
+            k = to - from;
+        if (k <= 0)
+            return;
+        // max-heap of the k least elements seen
+        for (int i = k / 2; --i >= 0;)
+            siftDown(a, from, i, k, isLess);
+        for (int i = from + k; i < to; ++i) {
+            if (less(isLess, a[i], a[from])) {
+                Object t = a[i];
+                a[i] = a[from];
+                a[from] = t;
+                siftDown(a, from, 0, k, isLess);
+            }
+        }
+        for (int n = k; --n > 0;) {
+            Object t = a[from + n];
+            a[from + n] = a[from];
+            a[from] = t;
+            siftDown(a, from, 0, n, isLess);
+        }
+    }
+}
@@ -0,0 +1,377 @@
+// ex: se sts=4 sw=4 expandtab:
+
+/**
+ * Yeti core library - structure default implementation.
+ *
+ * Copyright (c) 2010 Madis Janson
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package yeti.lang;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Yeti core library - sorted hash.
+ * Persistent AVL tree, where insert and delete return a new tree sharing
+ * the unchanged nodes with the old one. Keys must be Comparable.
+ * Put and remove replace the root with a path copy, so the trees
+ * derived from it (and copies) are not affected.
+ */
+public final class TreeHash extends AbstractMap
+        implements ByKey, Coll, Serializable {
+    private static final class Node implements Map.Entry, Serializable {
+        final Object key;
+        final Object value;
+        final Node left;
+        final Node right;
+        final int height;
+        final int size;
+
+        Node(Object key, Object value, Node left, Node right) {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            int lh = 0, rh = 0, n = 1;
+            if (left != null) {
+                lh = left.height;
+                n += left.size;
+            }
+            if (right != null) {
+                rh = right.height;
+                n += right.size;
+            }
+            height = (lh > rh ? lh : rh) + 1;
+            size = n;
+        }
+
+        public Object getKey() {
+            return key;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        public Object setValue(Object value) {
+            throw new UnsupportedOperationException("Immutable tree hash");
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry e = (Map.Entry) o;
+            Object k = e.getKey(), v = e.getValue();
+            return (key == null ? k == null : key.equals(k)) &&
+                   (value == null ? v == null : value.equals(v));
+        }
+
+        public int hashCode() {
+            return (key == null ? 0 : key.hashCode()) ^
+                   (value == null ? 0 : value.hashCode());
+        }
+    }
+
+    private static final class NodeIter implements Iterator {
+        private Node[] stack;
+        private int sp;
+
+        NodeIter(Node root) {
+            stack = new Node[root == null ? 0 : root.height];
+            for (; root != null; root = root.left)
+                stack[sp++] = root;
+        }
+
+        public boolean hasNext() {
+            return sp > 0;
+        }
+
+        public Object next() {
+            if (sp == 0)
+                throw new NoSuchElementException();
+            Node n = stack[--sp];
+            for (Node i = n.right; i != null; i = i.left)
+                stack[sp++] = i;
+            return n;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private Node root;
+    private Fun defaultFun;
+
+    private TreeHash(Node root, Fun defaultFun) {
+        this.root = root;
+        this.defaultFun = defaultFun;
+    }
+
+    /**
+     * Returns copy of the given map as TreeHash. O(1) for a TreeHash.
+     */
+    public static TreeHash of(Object map) {
+        if (map instanceof TreeHash)
+            return (TreeHash) ((TreeHash) map).copy();
+        Node root = null;
+        if (map != null) {
+            Iterator i = ((Map) map).entrySet().iterator();
+            while (i.hasNext()) {
+                Map.Entry e = (Map.Entry) i.next();
+                root = insert(root, e.getKey(), e.getValue());
+            }
+        }
+        return new TreeHash(root, null);
+    }
+
+    private static int compare(Object a, Object b) {
+        return ((Comparable) a).compareTo(b);
+    }
+
+    private static int height(Node n) {
+        return n == null ? 0 : n.height;
+    }
+
+    // node with given contents, rotated when subtree heights differ by 2
+    private static Node balance(Object key, Object value,
+                                Node left, Node right) {
+        int lh = height(left), rh = height(right);
+        if (lh > rh + 1) {
+            if (height(left.left) >= height(left.right))
+                return new Node(left.key, left.value, left.left,
+                                new Node(key, value, left.right, right));
+            Node m = left.right;
+            return new Node(m.key, m.value,
+                            new Node(left.key, left.value, left.left, m.left),
+                            new Node(key, value, m.right, right));
+        }
+        if (rh > lh + 1) {
+            if (height(right.right) >= height(right.left))
+                return new Node(right.key, right.value,
+                                new Node(key, value, left, right.left),
+                                right.right);
+            Node m = right.left;
+            return new Node(m.key, m.value,
+                            new Node(key, value, left, m.left),
+                            new Node(right.key, right.value,
+                                     m.right, right.right));
+        }
+        return new Node(key, value, left, right);
+    }
+
+    private static Node insert(Node n, Object key, Object value) {
+        if (n == null)
+            return new Node(key, value, null, null);
+        int c = compare(key, n.key);
+        if (c < 0)
+            return balance(n.key, n.value, insert(n.left, key, value),
+                           n.right);
+        if (c > 0)
+            return balance(n.key, n.value, n.left,
+                           insert(n.right, key, value));
+        return value == n.value ? n : new Node(n.key, value, n.left, n.right);
+    }
+
+    private static Node deleteMin(Node n) {
+        return n.left == null ? n.right
+            : balance(n.key, n.value, deleteMin(n.left), n.right);
+    }
+
+    private static Node delete(Node n, Object key) {
+        if (n == null)
+            return null;
+        int c = compare(key, n.key);
+        if (c < 0) {
+            Node l = delete(n.left, key);
+            return l == n.left ? n : balance(n.key, n.value, l, n.right);
+        }
+        if (c > 0) {
+            Node r = delete(n.right, key);
+            return r == n.right ? n : balance(n.key, n.value, n.left, r);
+        }
+        if (n.left == null)
+            return n.right;
+        if (n.right == null)
+            return n.left;
+        Node m = n.right;
+        while (m.left != null)
+            m = m.left;
+        return balance(m.key, m.value, n.left, deleteMin(n.right));
+    }
+
+    private Node find(Object key) {
+        Node n = root;
+        while (n != null) {
+            int c = compare(key, n.key);
+            if (c == 0)
+                break;
+            n = c < 0 ? n.left : n.right;
+        }
+        return n;
+    }
+
+    /**
+     * Returns tree with the key set to value. O(log n).
+     */
+    public TreeHash insert(Object key, Object value) {
+        return new TreeHash(insert(root, key, value), defaultFun);
+    }
+
+    /**
+     * Returns tree without the key. O(log n).
+     */
+    public TreeHash delete(Object key) {
+        return new TreeHash(delete(root, key), defaultFun);
+    }
+
+    private static void collect(Node n, Object from, Object to,
+                                ArrayList res) {
+        while (n != null) {
+            boolean geFrom = compare(n.key, from) >= 0;
+            boolean leTo = compare(n.key, to) <= 0;
+            if (geFrom)
+                collect(n.left, from, to, res);
+            if (geFrom && leTo)
+                res.add(n);
+            if (!leTo)
+                return;
+            n = n.right;
+        }
+    }
+
+    private static Node build(Object[] nodes, int from, int to) {
+        if (from >= to)
+            return null;
+        int m = (from + to) >>> 1;
+        Node n = (Node) nodes[m];
+        return new Node(n.key, n.value, build(nodes, from, m),
+                        build(nodes, m + 1, to));
+    }
+
+    /**
+     * Returns tree of entries with from <= key <= to.
+     */
+    public TreeHash range(Object from, Object to) {
+        ArrayList res = new ArrayList();
+        collect(root, from, to, res);
+        Object[] nodes = res.toArray();
+        return new TreeHash(nodes.length == size() ? root
+                                : build(nodes, 0, nodes.length), defaultFun);
+    }
+
+    public Object get(Object key) {
+        Node n = find(key);
+        return n == null ? null : n.value;
+    }
+
+    public Object vget(Object key) {
+        Node n = find(key);
+        if (n != null)
+            return n.value;
+        if (defaultFun != null)
+            return defaultFun.apply(key);
+        throw new NoSuchKeyException("Key not found (" + key + ")");
+    }
+
+    public boolean containsKey(Object key) {
+        return find(key) != null;
+    }
+
+    public Object put(Object key, Object value) {
+        Node n = find(key);
+        root = insert(root, key, value);
+        return n == null ? null : n.value;
+    }
+
+    public Object remove(Object key) {
+        Node n = find(key);
+        if (n == null)
+            return null;
+        root = delete(root, key);
+        return n.value;
+    }
+
+    public void removeAll(AList keys) {
+        for (AIter i = keys; i != null; i = i.next())
+            root = delete(root, i.first());
+    }
+
+    public void clear() {
+        root = null;
+    }
+
+    public void setDefault(Fun fun) {
+        defaultFun = fun;
+    }
+
+    public int size() {
+        return root == null ? 0 : root.size;
+    }
+
+    public long length() {
+        return size();
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    public Set entrySet() {
+        return new AbstractSet() {
+            public Iterator iterator() {
+                return new NodeIter(root);
+            }
+
+            public int size() {
+                return TreeHash.this.size();
+            }
+        };
+    }
+
+    /** Values in the key order. */
+    public AList asList() {
+        Object[] values = new Object[size()];
+        Iterator i = new NodeIter(root);
+        for (int n = 0; i.hasNext(); ++n)
+            values[n] = ((Node) i.next()).value;
+        return new MList(values);
+    }
+
+    public Object copy() {
+        return new TreeHash(root, defaultFun);
+    }
+
+    public String toString() {
+        return Show.toString(this);
+    }
+}
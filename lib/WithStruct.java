@@ -32,68 +32,191 @@ package yeti.lang;
 
 import java.io.Serializable;
 
+/**
+ * Structure created by with from a source and an override structure.
+ * The fields are copied into one flat array, so successive withs don't
+ * build chains and fields are found in constant time. Only var fields
+ * are aliased: those are stored as reference structure with an index,
+ * like Struct.ref returns them. The field layout (Shape) is shared by
+ * structures created from the same source and override shapes, and the
+ * with expression keeps the last two layouts in its Site.
+ */
 public class WithStruct extends AStruct {
-    private Object[] values;
-    private int[] index;
+    private final Shape shape;
+    private final Object[] values;
+    // field indexes in reference structures, null when there are no vars
+    private final int[] index;
 
-    public WithStruct(Struct src, Struct override,
-                      String[] names, boolean allowNew) {
-        super(null, null);
-        int ac = src.count(), bc = override.count();
-        index = new int[allowNew ? ac + names.length : ac];
-        values = new Object[index.length << 1];
-        int i = 0, j = -1, k = 0, n = 0;
-        String an = src.name(0), bn;
-        while ((bn = override.name(++j)) != names[0]);
-        while (an != null || bn != null) {
-            int c = an == null ? 1 : bn == null ? -1 : an.compareTo(bn);
-            if (c >= 0) { // src >= override - take override
-                values[n] = bn;
-                values[n + 1] = override.ref(j, index, n >> 1);
-                if (++k >= names.length) {
-                    bn = null;
-                } else {
-                    while ((bn = override.name(++j)) != names[k]);
+    static final class Shape implements Serializable {
+        // source and override names arrays this layout was built for
+        final String[] srcNames;
+        final String[] overrideNames;
+        final String[] names;
+        // source field index, or -1 - index in override
+        final int[] from;
+        // open addressing hash of names, holding index + 1
+        final int[] table;
+
+        Shape(Struct src, Struct override, String[] with, boolean allowNew) {
+            srcNames = src instanceof AStruct ? ((AStruct) src).names : null;
+            overrideNames = override instanceof AStruct
+                ? ((AStruct) override).names : null;
+            int ac = src.count(), bc = override.count();
+            String[] mergedNames = new String[ac + with.length];
+            int[] mergedFrom = new int[mergedNames.length];
+            int i = 0, j = next(override, with, 0, bc), n = 0;
+            String an = ac > 0 ? src.name(0) : null;
+            String bn = j < bc ? override.name(j) : null;
+            while (an != null || bn != null) {
+                int c = an == null ? 1 : bn == null ? -1 : an.compareTo(bn);
+                if (c >= 0) { // src >= override - take override
+                    if (c == 0 || allowNew) {
+                        mergedNames[n] = bn;
+                        mergedFrom[n++] = -1 - j;
+                    }
+                    j = next(override, with, j + 1, bc);
+                    bn = j < bc ? override.name(j) : null;
+                    if (c == 0)
+                        an = ++i >= ac ? null : src.name(i);
+                } else { // src < override - take super
+                    mergedNames[n] = an;
+                    mergedFrom[n++] = i;
+                    an = ++i >= ac ? null : src.name(i);
                 }
-            } else { // src < override - take super
-                values[n] = an;
-                values[n + 1] = src.ref(i, index, n >> 1);
             }
-            if (c <= 0) {
-                an = ++i >= ac ? null : src.name(i);
+            // keeping the source names array when no fields were added
+            // lets with chains hit the site cache with the same key
+            if (n == ac && srcNames != null) {
+                names = srcNames;
+            } else {
+                names = new String[n];
+                System.arraycopy(mergedNames, 0, names, 0, n);
+            }
+            from = new int[n];
+            System.arraycopy(mergedFrom, 0, from, 0, n);
+            int mask = 3;
+            while (mask < n * 2)
+                mask = mask << 1 | 1;
+            table = new int[mask + 1];
+            for (i = 0; i < n; ++i) {
+                for (j = names[i].hashCode() & mask; table[j] != 0;
+                     j = j + 1 & mask);
+                table[j] = i + 1;
+            }
+        }
+
+        // index of next override field (in sorted order) given in with
+        private static int next(Struct override, String[] with,
+                                int j, int bc) {
+            for (; j < bc; ++j) {
+                String name = override.name(j);
+                for (int k = with.length; --k >= 0;)
+                    if (with[k] == name)
+                        return j;
             }
-            n += 2;
+            return bc;
+        }
+
+        int find(String field) {
+            int[] t = table;
+            int mask = t.length - 1, i = field.hashCode() & mask, n;
+            while ((n = t[i]) != 0 && names[n - 1] != field)
+                i = i + 1 & mask;
+            return n - 1;
         }
     }
 
-    public int count() {
-        return index.length;
+    /**
+     * Layout cache of one with expression.
+     */
+    public static final class Site {
+        final String[] names;
+        final boolean allowNew;
+        private Shape first;
+        private Shape second;
+
+        public Site(String[] names, boolean allowNew) {
+            this.names = names;
+            this.allowNew = allowNew;
+        }
+
+        Shape shape(Struct src, Struct override) {
+            if (src instanceof AStruct && override instanceof AStruct) {
+                String[] a = ((AStruct) src).names;
+                String[] b = ((AStruct) override).names;
+                Shape s;
+                if (a != null && b != null) {
+                    if ((s = first) != null && s.srcNames == a &&
+                            s.overrideNames == b ||
+                        (s = second) != null && s.srcNames == a &&
+                            s.overrideNames == b)
+                        return s;
+                    s = new Shape(src, override, names, allowNew);
+                    second = first;
+                    first = s;
+                    return s;
+                }
+            }
+            return new Shape(src, override, names, allowNew);
+        }
     }
 
-    public String name(int i) {
-        return values[i << 1].toString();
+    public WithStruct(Site site, Struct src, Struct override) {
+        this(site.shape(src, override), src, override);
+    }
+
+    public WithStruct(Struct src, Struct override,
+                      String[] names, boolean allowNew) {
+        this(new Shape(src, override, names, allowNew), src, override);
+    }
+
+    private WithStruct(Shape shape, Struct src, Struct override) {
+        super(shape.names, null);
+        this.shape = shape;
+        int[] from = shape.from;
+        int n = from.length;
+        int[] index = new int[n];
+        boolean vars = false;
+        values = new Object[n];
+        // with chains copy the previous structure directly
+        WithStruct prev = src instanceof WithStruct ? (WithStruct) src : null;
+        for (int i = 0; i < n; ++i) {
+            int f = from[i];
+            if (f < 0) {
+                values[i] = override.ref(-1 - f, index, i);
+            } else if (prev == null) {
+                values[i] = src.ref(f, index, i);
+            } else {
+                values[i] = prev.values[f];
+                index[i] = prev.index == null ? -1 : prev.index[f];
+            }
+            if (index[i] >= 0)
+                vars = true;
+        }
+        this.index = vars ? index : null;
     }
 
     public Object get(int i) {
-        return values[(i << 1) + 1];
+        int id;
+        if (index == null || (id = index[i]) < 0)
+            return values[i];
+        return ((Struct) values[i]).get(id);
     }
 
     public Object get(String field) {
-        int id, i = -2;
-        while (values[i += 2] != field);
-        if ((id = index[i >>> 1]) < 0)
-            return values[i + 1];
-        return ((Struct) values[i + 1]).get(id);
+        return get(shape.find(field));
     }
 
     public void set(String field, Object value) {
-        int i = -2;
-        while (values[i += 2] != field);
-        ((Struct) values[i + 1]).set(field, value);
+        ((Struct) values[shape.find(field)]).set(field, value);
     }
 
     public Object ref(int field, int[] index, int at) {
-        index[at] = this.index[field];
-        return values[(field << 1) + 1];
+        index[at] = this.index == null ? -1 : this.index[field];
+        return values[field];
+    }
+
+    boolean var(int field) {
+        return index != null && index[field] >= 0;
     }
 }